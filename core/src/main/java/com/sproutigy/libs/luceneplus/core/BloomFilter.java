@@ -0,0 +1,92 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.NonNull;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+
+/**
+ * Compact probabilistic set of terms: answers "surely absent" or "maybe present".
+ * Bit positions are derived from two murmur3 hashes of term bytes (double hashing).
+ */
+public final class BloomFilter {
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numBits = (long) bits.length * Long.SIZE;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Creates empty filter sized for a given number of terms and false positive probability
+     * @param expectedTerms expected number of terms
+     * @param falsePositiveProbability false positive probability, between 0 and 1 (exclusive)
+     * @return empty filter
+     */
+    public static BloomFilter create(long expectedTerms, double falsePositiveProbability) {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+        }
+        long terms = Math.max(1, expectedTerms);
+        long bitsCount = (long) Math.ceil(-terms * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bitsCount + Long.SIZE - 1) / Long.SIZE));
+        int numHashes = (int) Math.max(1, Math.round((double) words * Long.SIZE / terms * Math.log(2)));
+        return new BloomFilter(new long[words], Math.min(numHashes, 30));
+    }
+
+    public void add(@NonNull BytesRef term) {
+        int h1 = StringHelper.murmurhash3_x86_32(term, 0);
+        int h2 = StringHelper.murmurhash3_x86_32(term, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = position(h1, h2, i);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false only if term has surely not been added
+     */
+    public boolean mightContain(@NonNull BytesRef term) {
+        int h1 = StringHelper.murmurhash3_x86_32(term, 0);
+        int h2 = StringHelper.murmurhash3_x86_32(term, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = position(h1, h2, i);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long position(int h1, int h2, int i) {
+        long combined = (h1 & 0xFFFFFFFFL) + i * ((h2 & 0xFFFFFFFFL) | 1);
+        return combined % numBits;
+    }
+
+    public long ramBytesUsed() {
+        return (long) bits.length * (Long.SIZE / Byte.SIZE);
+    }
+
+    public void write(@NonNull DataOutput output) throws IOException {
+        output.writeVInt(numHashes);
+        output.writeVInt(bits.length);
+        for (long word : bits) {
+            output.writeLong(word);
+        }
+    }
+
+    public static BloomFilter read(@NonNull DataInput input) throws IOException {
+        int numHashes = input.readVInt();
+        long[] bits = new long[input.readVInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = input.readLong();
+        }
+        return new BloomFilter(bits, numHashes);
+    }
+}
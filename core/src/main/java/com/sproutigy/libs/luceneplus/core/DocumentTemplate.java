@@ -0,0 +1,143 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.*;
+
+/**
+ * Definition of document fields made once, for writing many documents without creating fields for each of them.
+ * Values are set into fields preallocated per thread (see {@link #document()}) and the same document
+ * is passed to writer again and again. Produces the same fields as {@link LuceneFields} helpers (Lucene 6+ points).
+ */
+public class DocumentTemplate {
+    public enum Type {
+        KEYWORD, TEXT, BOOLEAN, LONG, INTEGER, DOUBLE, FLOAT, BINARY
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Definition {
+        private final String name;
+        private final Type type;
+        private final LuceneFields.FieldOptions options;
+    }
+
+    private final List<Definition> definitions;
+    private final Map<String, Integer> slots;
+
+    private final ThreadLocal<TemplateDocument> documents = new ThreadLocal<TemplateDocument>() {
+        @Override
+        protected TemplateDocument initialValue() {
+            return new TemplateDocument(DocumentTemplate.this);
+        }
+    };
+
+    private DocumentTemplate(List<Definition> definitions) {
+        this.definitions = Collections.unmodifiableList(new ArrayList<>(definitions));
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < definitions.size(); i++) {
+            slots.put(definitions.get(i).getName(), i);
+        }
+        this.slots = slots;
+    }
+
+    public List<Definition> getDefinitions() {
+        return definitions;
+    }
+
+    int slot(String name, Type type) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Field " + name + " is not defined in template");
+        }
+        if (definitions.get(slot).getType() != type) {
+            throw new IllegalArgumentException("Field " + name + " is " + definitions.get(slot).getType() + ", not " + type);
+        }
+        return slot;
+    }
+
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Field " + name + " is not defined in template");
+        }
+        return slot;
+    }
+
+    /**
+     * Provides cleared document reused by the current thread. It may be passed to writer and set again
+     * as soon as writer returns, but not collected for batch writes (use {@link #newDocument()} for them).
+     * @return document of the current thread
+     */
+    public TemplateDocument document() {
+        TemplateDocument document = documents.get();
+        document.clear();
+        return document;
+    }
+
+    /**
+     * @return new document with its own fields
+     */
+    public TemplateDocument newDocument() {
+        return new TemplateDocument(this);
+    }
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final List<Definition> definitions = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+
+        public Builder addKeyword(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.KEYWORD, options);
+        }
+
+        public Builder addText(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.TEXT, options);
+        }
+
+        public Builder addBoolean(String name, LuceneFields.FieldOptions options) {
+            if (!options.isIndex() && !options.isStore()) {
+                throw new IllegalArgumentException("Boolean field " + name + " has to be indexed or stored");
+            }
+            return add(name, Type.BOOLEAN, options);
+        }
+
+        public Builder addLong(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.LONG, options);
+        }
+
+        public Builder addInteger(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.INTEGER, options);
+        }
+
+        public Builder addDouble(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.DOUBLE, options);
+        }
+
+        public Builder addFloat(String name, LuceneFields.FieldOptions options) {
+            return add(name, Type.FLOAT, options);
+        }
+
+        public Builder addBinary(String name) {
+            return add(name, Type.BINARY, LuceneFields.FieldOptions.STORE);
+        }
+
+        private Builder add(@NonNull String name, @NonNull Type type, @NonNull LuceneFields.FieldOptions options) {
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Field " + name + " is already defined");
+            }
+            definitions.add(new Definition(name, type, options));
+            return this;
+        }
+
+        public DocumentTemplate build() {
+            return new DocumentTemplate(definitions);
+        }
+    }
+}
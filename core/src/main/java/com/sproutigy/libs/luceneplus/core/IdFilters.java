@@ -0,0 +1,197 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bloom filters of ID field values, one per segment of the latest commit, persisted beside index files
+ * (like {@link LuceneIndexMetadata}), so lookups by ID may skip indices without opening them.
+ * Segments are immutable, so filters of segments kept since the previous commit are reused, not rebuilt.
+ */
+public final class IdFilters {
+    public static final String FILE_NAME = "luceneplus.ids";
+    private static final String TEMP_FILE_PREFIX = "luceneplus";
+    private static final String TEMP_FILE_SUFFIX = "ids";
+    private static final String CODEC_NAME = "LucenePlusIdFilters";
+    private static final int VERSION = 0;
+
+    public static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Getter
+    private final long generation;
+
+    @Getter
+    private final String idField;
+
+    /**
+     * Filters by segment name and ID
+     */
+    private final Map<String, BloomFilter> filters;
+
+    private IdFilters(long generation, String idField, Map<String, BloomFilter> filters) {
+        this.generation = generation;
+        this.idField = idField;
+        this.filters = Collections.unmodifiableMap(filters);
+    }
+
+    /**
+     * @return false only if no segment surely contains the ID
+     */
+    public boolean mightContain(@NonNull BytesRef id) {
+        for (BloomFilter filter : filters.values()) {
+            if (filter.mightContain(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean mightContain(@NonNull String id) {
+        return mightContain(new BytesRef(id));
+    }
+
+    public int getSegmentCount() {
+        return filters.size();
+    }
+
+    public long ramBytesUsed() {
+        long bytes = 0;
+        for (BloomFilter filter : filters.values()) {
+            bytes += filter.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    /**
+     * Computes filters of segments of the provided reader, reusing filters of the previous ones
+     * @param generation generation of the latest commit
+     * @param reader reader containing at least all the segments of the latest commit
+     * @param idField name of indexed ID field
+     * @param previous previously computed filters, may be null
+     * @return filters or null if any segment could not be identified
+     * @throws IOException
+     */
+    public static IdFilters compute(long generation, @NonNull IndexReader reader, @NonNull String idField, IdFilters previous) throws IOException {
+        Map<String, BloomFilter> filters = new HashMap<>();
+        for (LeafReaderContext leaf : reader.leaves()) {
+            LeafReader leafReader = FilterLeafReader.unwrap(leaf.reader());
+            if (!(leafReader instanceof SegmentReader)) {
+                return null;
+            }
+            SegmentCommitInfo info = ((SegmentReader) leafReader).getSegmentInfo();
+            String key = info.info.name + "_" + StringHelper.idToString(info.info.getId());
+            BloomFilter filter = null;
+            if (previous != null && idField.equals(previous.idField)) {
+                filter = previous.filters.get(key);
+            }
+            if (filter == null) {
+                filter = build(leafReader, idField);
+            }
+            filters.put(key, filter);
+        }
+        return new IdFilters(generation, idField, filters);
+    }
+
+    private static BloomFilter build(LeafReader reader, String idField) throws IOException {
+        Terms terms = reader.terms(idField);
+        if (terms == null) {
+            return BloomFilter.create(1, FALSE_POSITIVE_PROBABILITY);
+        }
+        long size = terms.size();
+        BloomFilter filter = BloomFilter.create(size >= 0 ? size : reader.maxDoc(), FALSE_POSITIVE_PROBABILITY);
+        TermsEnum termsEnum = terms.iterator();
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            filter.add(term);
+        }
+        return filter;
+    }
+
+    /**
+     * Provides filters of the latest commit from the sidecar file
+     * @param directory index directory
+     * @return filters or null if sidecar file is missing or outdated
+     * @throws IOException
+     */
+    public static IdFilters read(@NonNull Directory directory) throws IOException {
+        String[] files = directory.listAll();
+        if (!Arrays.asList(files).contains(FILE_NAME)) {
+            return null;
+        }
+        IdFilters filters = load(directory);
+        if (filters == null || filters.getGeneration() != SegmentInfos.getLastCommitGeneration(files)) {
+            return null;
+        }
+        return filters;
+    }
+
+    /**
+     * Loads filters from the sidecar file, regardless of commit they have been computed for
+     * @param directory index directory
+     * @return filters or null if sidecar file is missing or corrupted
+     * @throws IOException
+     */
+    public static IdFilters load(@NonNull Directory directory) throws IOException {
+        try (ChecksumIndexInput input = directory.openChecksumInput(FILE_NAME, IOContext.READONCE)) {
+            CodecUtil.checkHeader(input, CODEC_NAME, VERSION, VERSION);
+            long generation = input.readVLong();
+            String idField = input.readString();
+            int count = input.readVInt();
+            Map<String, BloomFilter> filters = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = input.readString();
+                filters.put(key, BloomFilter.read(input));
+            }
+            CodecUtil.checkFooter(input);
+            return new IdFilters(generation, idField, filters);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        } catch (CorruptIndexException e) {
+            return null;
+        }
+    }
+
+    public void write(@NonNull Directory directory) throws IOException {
+        String tempFileName;
+        try (IndexOutput output = directory.createTempOutput(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(output, CODEC_NAME, VERSION);
+            output.writeVLong(generation);
+            output.writeString(idField);
+            output.writeVInt(filters.size());
+            for (Map.Entry<String, BloomFilter> entry : filters.entrySet()) {
+                output.writeString(entry.getKey());
+                entry.getValue().write(output);
+            }
+            CodecUtil.writeFooter(output);
+            tempFileName = output.getName();
+        }
+
+        try {
+            directory.sync(Arrays.asList(tempFileName));
+            try {
+                directory.rename(tempFileName, FILE_NAME);
+            } catch (FileAlreadyExistsException e) {
+                directory.deleteFile(FILE_NAME);
+                directory.rename(tempFileName, FILE_NAME);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                directory.deleteFile(tempFileName);
+            } catch (IOException ignore) { }
+            throw e;
+        }
+    }
+}
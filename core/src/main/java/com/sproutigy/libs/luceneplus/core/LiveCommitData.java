@@ -0,0 +1,52 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.NonNull;
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-modify-write of live commit data of a shared writer, so concurrent updates of distinct keys are not lost
+ */
+public final class LiveCommitData {
+    private LiveCommitData() { }
+
+    /**
+     * @return copy of live commit data of writer
+     */
+    public static Map<String, String> get(@NonNull IndexWriter writer) {
+        //writer guards its live commit data with its own monitor
+        synchronized (writer) {
+            Map<String, String> commitData = new HashMap<>();
+            Iterable<Map.Entry<String, String>> liveCommitData = writer.getLiveCommitData();
+            if (liveCommitData != null) {
+                for (Map.Entry<String, String> entry : liveCommitData) {
+                    commitData.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return commitData;
+        }
+    }
+
+    /**
+     * Sets given entries of live commit data of writer, keeping the other ones
+     * @param entries entries to set, null values remove keys
+     * @return live commit data before the change
+     */
+    public static Map<String, String> put(@NonNull IndexWriter writer, @NonNull Map<String, String> entries) {
+        synchronized (writer) {
+            Map<String, String> previous = get(writer);
+            Map<String, String> commitData = new HashMap<>(previous);
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (entry.getValue() != null) {
+                    commitData.put(entry.getKey(), entry.getValue());
+                } else {
+                    commitData.remove(entry.getKey());
+                }
+            }
+            writer.setLiveCommitData(commitData.entrySet());
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versions (and optionally documents) of IDs written since the latest searcher refresh, so they may be looked up
+ * without refreshing. Entries are kept in the current map, moved to the old one when refresh starts
+ * and dropped when it finishes, as refreshed searcher sees them.
+ * Versions are assigned from index-wide counter persisted in commit user data, so they never go backwards,
+ * also when deleted ID is written again.
+ */
+public class LiveVersionMap implements ReferenceManager.RefreshListener {
+    /**
+     * Numeric doc values field with document version
+     */
+    public static final String VERSION_FIELD = "_version";
+
+    /**
+     * Expected version of any existing or not existing document
+     */
+    public static final long MATCH_ANY = -1;
+
+    /**
+     * Version of not existing document
+     */
+    public static final long NOT_FOUND = 0;
+
+    /**
+     * Commit user data key of the highest version assigned
+     */
+    public static final String MAX_VERSION_KEY = "luceneplus.maxVersion";
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Entry {
+        private final long version;
+        private final long seqNo;
+        private final Iterable<? extends IndexableField> document;
+        private final boolean deleted;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Maps {
+        final Map<BytesRef, Entry> current;
+        final Map<BytesRef, Entry> old;
+    }
+
+    /**
+     * Whether written documents are kept in memory until refresh, otherwise get refreshes searcher
+     */
+    @Getter
+    private final boolean bufferDocuments;
+
+    private volatile Maps maps = new Maps(new ConcurrentHashMap<BytesRef, Entry>(), Collections.<BytesRef, Entry>emptyMap());
+
+    private final Object[] locks = new Object[64];
+
+    /**
+     * Highest version assigned, -1 until loaded from commit user data
+     */
+    private long maxVersion = -1;
+
+    public LiveVersionMap(boolean bufferDocuments) {
+        this.bufferDocuments = bufferDocuments;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return monitor guarding writes of a given ID
+     */
+    Object lockFor(BytesRef id) {
+        return locks[(id.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    public Entry get(BytesRef id) {
+        Maps maps = this.maps;
+        Entry entry = maps.current.get(id);
+        if (entry == null) {
+            entry = maps.old.get(id);
+        }
+        return entry;
+    }
+
+    void put(BytesRef id, Entry entry) {
+        maps.current.put(id, entry);
+    }
+
+    /**
+     * Drops tombstone of ID written bypassing this map, so it is not taken as a proof that ID is new
+     */
+    void dropTombstone(BytesRef id) {
+        Maps maps = this.maps;
+        dropTombstone(maps.current, id);
+        dropTombstone(maps.old, id);
+    }
+
+    private static void dropTombstone(Map<BytesRef, Entry> map, BytesRef id) {
+        Entry entry = map.get(id);
+        if (entry != null && entry.isDeleted()) {
+            map.remove(id, entry);
+        }
+    }
+
+    /**
+     * Assigns version higher than current version of document and than any version assigned before in the index,
+     * and records it in live commit data of the writer
+     */
+    synchronized long nextVersion(IndexWriter writer, long currentVersion) {
+        if (maxVersion < 0) {
+            maxVersion = 0;
+            String persisted = LiveCommitData.get(writer).get(MAX_VERSION_KEY);
+            if (persisted != null) {
+                try {
+                    maxVersion = Long.parseLong(persisted);
+                } catch (NumberFormatException ignore) { }
+            }
+        }
+        maxVersion = Math.max(maxVersion, currentVersion) + 1;
+        LiveCommitData.put(writer, Collections.singletonMap(MAX_VERSION_KEY, Long.toString(maxVersion)));
+        return maxVersion;
+    }
+
+    /**
+     * @return number of IDs written since the latest refresh
+     */
+    public int size() {
+        Maps maps = this.maps;
+        return maps.current.size() + maps.old.size();
+    }
+
+    void clear() {
+        maps = new Maps(new ConcurrentHashMap<BytesRef, Entry>(), Collections.<BytesRef, Entry>emptyMap());
+    }
+
+    @Override
+    public void beforeRefresh() {
+        maps = new Maps(new ConcurrentHashMap<BytesRef, Entry>(), maps.current);
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        maps = new Maps(maps.current, Collections.<BytesRef, Entry>emptyMap());
+    }
+}
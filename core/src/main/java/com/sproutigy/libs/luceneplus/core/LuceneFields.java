@@ -9,6 +9,9 @@ import org.apache.lucene.util.BytesRef;
 import java.lang.reflect.Constructor;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LuceneFields {
     private LuceneFields() { }
@@ -304,14 +307,32 @@ public class LuceneFields {
         return field;
     }
 
+    /**
+     * Keyword field types by [index][store], frozen so they may be shared by all fields
+     */
+    private static final FieldType[][] KEYWORD_TYPES = new FieldType[2][2];
+
+    static {
+        for (int index = 0; index < 2; index++) {
+            for (int store = 0; store < 2; store++) {
+                FieldType fieldType = new FieldType();
+                fieldType.setTokenized(false);
+                fieldType.setOmitNorms(true);
+                fieldType.setStored(store == 1);
+                fieldType.setIndexOptions(index == 1 ? IndexOptions.DOCS : IndexOptions.NONE);
+                fieldType.freeze();
+                KEYWORD_TYPES[index][store] = fieldType;
+            }
+        }
+    }
+
+    static FieldType keywordType(FieldOptions options) {
+        return KEYWORD_TYPES[options.isIndex() ? 1 : 0][options.isStore() ? 1 : 0];
+    }
+
     private static Field createKeyword(@NonNull String name, String value, FieldOptions options) {
         if (value != null) {
-            FieldType fieldType = new FieldType();
-            fieldType.setTokenized(false);
-            fieldType.setOmitNorms(true);
-            fieldType.setStored(options.isStore());
-            fieldType.setIndexOptions(options.isIndex() ? IndexOptions.DOCS : IndexOptions.NONE);
-            return createString(name, value, fieldType);
+            return createString(name, value, keywordType(options));
         }
         return null;
     }
@@ -319,7 +340,7 @@ public class LuceneFields {
 
     public static void addNumber(@NonNull Document doc, @NonNull String name, Number value, @NonNull FieldOptions options) {
         if (value != null) {
-            if (value instanceof BigDecimal || value instanceof java.lang.Double || value instanceof java.lang.Float || value.toString().contains(".")) {
+            if (!isIntegral(value)) {
                 if (value instanceof java.lang.Double || value instanceof java.lang.Float) {
                     Double.add(doc, name, value.doubleValue(), options);
                 }
@@ -352,6 +373,17 @@ public class LuceneFields {
         }
     }
 
+    private static boolean isIntegral(Number value) {
+        if (value instanceof java.lang.Long || value instanceof java.lang.Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger || value instanceof AtomicLong || value instanceof AtomicInteger) {
+            return true;
+        }
+        if (value instanceof BigDecimal || value instanceof java.lang.Double || value instanceof java.lang.Float) {
+            return false;
+        }
+        return !value.toString().contains("."); //unknown number type
+    }
+
     public static Number getNumber(@NonNull Document doc, @NonNull String name) {
         return getNumber(doc.getField(name));
     }
@@ -362,10 +394,16 @@ public class LuceneFields {
 
 
 
+    private static final ConcurrentHashMap<String, Constructor<?>> LEGACY_CONSTRUCTORS = new ConcurrentHashMap<>();
+
     @SneakyThrows
     private static IndexableField createLegacyLuceneField(String className, String name, Class<?> valueClass, Object value, boolean store) {
-        Class<?> clazz = Class.forName(className);
-        Constructor<?> cstr = clazz.getDeclaredConstructor(String.class, valueClass, Field.Store.class);
+        Constructor<?> cstr = LEGACY_CONSTRUCTORS.get(className);
+        if (cstr == null) {
+            Class<?> clazz = Class.forName(className);
+            cstr = clazz.getDeclaredConstructor(String.class, valueClass, Field.Store.class);
+            LEGACY_CONSTRUCTORS.put(className, cstr);
+        }
         return (IndexableField)cstr.newInstance(name, value, store ? Field.Store.YES : Field.Store.NO);
     }
 }
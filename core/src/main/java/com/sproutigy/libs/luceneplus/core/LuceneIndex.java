@@ -1,26 +1,48 @@
 package com.sproutigy.libs.luceneplus.core;
 
+import com.sproutigy.libs.luceneplus.core.bulk.BulkIndexer;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkOptions;
+import com.sproutigy.libs.luceneplus.core.bulk.OfflineBuildOptions;
+import com.sproutigy.libs.luceneplus.core.bulk.OfflineIndexBuilder;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
 import com.sproutigy.libs.luceneplus.core.search.SingleLuceneSearchResults;
 import lombok.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LuceneIndex implements LuceneIndexOperations, Closeable {
     public static final Analyzer DEFAULT_ANALYZER = new StandardAnalyzer();
 
     private Supplier<Directory> directorySupplier;
+
+    /**
+     * Provides configuration of writers opened after the change
+     */
+    @Getter @Setter
     private IndexWriterConfigSupplier indexWriterConfigSupplier;
 
     @Getter
@@ -37,13 +59,75 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
     private boolean autoFlush = false;
 
     @Getter
-    private LuceneOpenMode openMode = LuceneOpenMode.CREATE_OR_UPDATE;
+    private volatile LuceneOpenMode openMode = LuceneOpenMode.CREATE_OR_UPDATE;
 
     private Analyzer analyzer = DEFAULT_ANALYZER;
 
-    protected IndexWriter writer;
+    /**
+     * Whether metadata (statistics and timestamp bounds) should be persisted on every commit
+     */
+    @Getter @Setter
+    private boolean metadataEnabled = false;
+
+    /**
+     * Name of long point field with document timestamp, which bounds are kept in metadata
+     */
+    @Getter @Setter
+    private String timestampField;
+
+    /**
+     * Names of point fields (e.g. LuceneFields.Long or LuceneFields.Double) which bounds are kept in metadata,
+     * so searches with range filters may skip the index
+     */
+    @Getter
+    private Set<String> zoneMapFields = Collections.emptySet();
+
+    /**
+     * Order of documents inside segments, applied to writers opened after the change.
+     * Sorted searches which sort is a prefix of index sort terminate collection early in every sorted segment.
+     * Segments written with different index sort cannot be opened by writer with the new one.
+     */
+    @Getter @Setter
+    private Sort indexSort;
+
+    /**
+     * Consulted before documents are written, e.g. to slow down writing when buffers use too much memory
+     */
+    @Getter @Setter
+    private WriteThrottle writeThrottle;
 
-    protected ReferenceManager<IndexSearcher> searcherManager;
+    /**
+     * Tuning applied to configuration of writers opened after the change, see {@link #reopenWriter()}
+     */
+    @Getter @Setter
+    private WriterProfile writerProfile;
+
+    /**
+     * Optional schema which documents written by this index (not directly by acquired writer) are validated against
+     */
+    @Getter @Setter
+    private LuceneSchema schema;
+
+    /**
+     * Name of keyword field with unique document ID, used by versioned writes and real-time get.
+     * When metadata is enabled, bloom filters of its values are also kept beside index, see {@link #mayContainId(String)}
+     */
+    @Getter
+    private String idField;
+
+    @Getter
+    private volatile LiveVersionMap liveVersionMap;
+
+    private volatile LuceneIndexMetadata metadata;
+
+    private volatile IdFilters idFilters;
+
+    protected volatile IndexWriter writer;
+
+    private final AtomicInteger writerUsers = new AtomicInteger();
+    private volatile boolean writerReopenRequested = false;
+
+    protected volatile ReferenceManager<IndexSearcher> searcherManager;
 
     private final Object lock = new Object();
 
@@ -94,6 +178,12 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         checkOpenState();
         if (directory.listAll().length == 0) return true;
 
+        if (writer == null) {
+            //no uncommitted changes, so the latest commit is up to date
+            LuceneIndexMetadata metadata = getMetadata();
+            return metadata == null || metadata.isEmpty();
+        }
+
         IndexSearcher searcher = acquireSearcher();
         try {
             return searcher.getIndexReader().numDocs() == 0;
@@ -113,6 +203,29 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         return openMode == LuceneOpenMode.READ_ONLY;
     }
 
+    /**
+     * Allows writing to index opened read-only, without closing it. Searchers acquired before keep
+     * their readers, the next ones see also changes not committed yet.
+     * @return false if index is not read-only
+     * @throws IOException
+     */
+    public boolean makeWritable() throws IOException {
+        synchronized (lock) {
+            checkOpenState();
+            if (!isReadOnly()) {
+                return false;
+            }
+            openMode = LuceneOpenMode.CREATE_OR_UPDATE;
+            ReferenceManager<IndexSearcher> searcherManager = this.searcherManager;
+            if (searcherManager != null) {
+                //reader of commit replaced with near-real-time one
+                this.searcherManager = null;
+                searcherManager.close();
+            }
+            return true;
+        }
+    }
+
     @Override
     public Analyzer getAnalyzer() {
         return analyzer;
@@ -135,6 +248,10 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         if (openMode == LuceneOpenMode.UPDATE) writerConfig.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
         if (openMode == LuceneOpenMode.CREATE_OR_UPDATE) writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
+        if (indexSort != null) writerConfig.setIndexSort(indexSort);
+
+        if (writerProfile != null) writerProfile.apply(writerConfig);
+
         return writerConfig;
     }
 
@@ -159,10 +276,34 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         };
     }
 
+    /**
+     * Blocks until write throttle (if set) allows writing documents. Must not be called while writer is acquired,
+     * as flushes freeing memory may need to wait for it.
+     * @throws IOException
+     */
+    public void awaitWriteThrottle() throws IOException {
+        WriteThrottle writeThrottle = this.writeThrottle;
+        if (writeThrottle != null) {
+            writeThrottle.await(this);
+        }
+    }
+
     @SneakyThrows
     public IndexWriter acquireWriter() throws IOException {
+        writerUsers.incrementAndGet();
+        try {
+            return openWriter();
+        } catch (IOException | RuntimeException e) {
+            releaseWriterUse();
+            throw e;
+        }
+    }
+
+    private IndexWriter openWriter() throws IOException {
+        IndexWriter writer = this.writer;
         if (writer == null) {
             synchronized (lock) {
+                writer = this.writer;
                 if (writer == null) {
                     if (isReadOnly()) {
                         throw new IllegalStateException("Index is opened in read-only openMode");
@@ -170,6 +311,7 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
                     checkOpenState();
 
                     writer = new IndexWriter(directory, provideNewWriterConfig());
+                    this.writer = writer;
 
                     if (getOpenMode() == LuceneOpenMode.CREATE) {
                         setOpenMode(LuceneOpenMode.CREATE_OR_UPDATE); //ensure that the next writer will not overwrite index
@@ -184,29 +326,102 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
     public void release(IndexWriter writer) throws IOException {
         if (writer != null) {
             try {
-                if (autoFlush) {
-                    writer.flush();
-                }
-                if (autoCommit) {
-                    writer.commit();
+                try {
+                    if (autoFlush) {
+                        writer.flush();
+                    }
+                    if (autoCommit) {
+                        writer.commit();
+                        try {
+                            updateMetadata(writer);
+                        } catch (IOException | RuntimeException ignore) {
+                            //changes are committed, sidecar files are rewritten with the next commit
+                        }
+                    }
+                } catch (Exception e) {
+                    //failed writer is discarded, closed so its lock and files are not leaked
+                    synchronized (lock) {
+                        if (this.writer == writer) {
+                            this.writer = null;
+                        }
+                    }
+                    try {
+                        writer.close();
+                    } catch (IOException | RuntimeException closeFailure) {
+                        try {
+                            writer.rollback();
+                        } catch (IOException | RuntimeException ignore) { }
+                    }
                 }
-            } catch (Exception e) {
-                this.writer = null;
-            }
 
-            if (this.writer != null && this.writer.isOpen()) {
-                if (searcherManager != null) {
-                    searcherManager.maybeRefreshBlocking();
-                }
-            } else {
-                synchronized (lock) {
-                    this.writer = null;
+                if (this.writer != null && this.writer.isOpen()) {
                     if (searcherManager != null) {
-                        searcherManager.close();
-                        searcherManager = null;
+                        searcherManager.maybeRefreshBlocking();
+                    }
+                } else {
+                    synchronized (lock) {
+                        this.writer = null;
+                        if (searcherManager != null) {
+                            searcherManager.close();
+                            searcherManager = null;
+                        }
                     }
                 }
+            } finally {
+                releaseWriterUse();
+            }
+        }
+    }
+
+    private void releaseWriterUse() throws IOException {
+        if (writerUsers.decrementAndGet() <= 0 && writerReopenRequested) {
+            reopenWriterIfUnused();
+        }
+    }
+
+    /**
+     * Commits and closes writer as soon as it is not acquired anymore (immediately if possible), so the next one
+     * is opened with current configuration, e.g. after changing writer profile from bulk to near-real-time.
+     * Must not be called while holding acquired writer of this index, as it would be closed on its release.
+     * @return true if writer has been closed (or was not opened), false if it will be closed when released
+     * @throws IOException
+     */
+    public boolean reopenWriter() throws IOException {
+        writerReopenRequested = true;
+        return reopenWriterIfUnused();
+    }
+
+    private boolean reopenWriterIfUnused() throws IOException {
+        synchronized (lock) {
+            if (!writerReopenRequested) {
+                return true;
+            }
+            IndexWriter writer = this.writer;
+            if (writer == null) {
+                writerReopenRequested = false;
+                return true;
             }
+            //writer is detached first, so acquisitions counted after the check open a new one
+            if (writerUsers.get() > 0) {
+                return false;
+            }
+            this.writer = null;
+            if (writerUsers.get() > 0) {
+                this.writer = writer;
+                return false;
+            }
+            writerReopenRequested = false;
+
+            if (searcherManager != null) {
+                searcherManager.close();
+                searcherManager = null;
+            }
+            if (writer.isOpen()) {
+                writer.commit();
+                updateMetadata(writer);
+                writer.close();
+            }
+            return true;
         }
     }
 
@@ -236,7 +451,12 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         if (isReadOnly()) {
             return DirectoryReader.open(directory);
         } else {
-            return DirectoryReader.open(acquireWriter());
+            writerUsers.incrementAndGet();
+            try {
+                return DirectoryReader.open(openWriter());
+            } finally {
+                releaseWriterUse();
+            }
         }
     }
 
@@ -269,19 +489,46 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
 
     public IndexSearcher acquireSearcher() throws IOException {
         checkOpenState();
-        if (searcherManager == null) {
-            synchronized (lock) {
-                if (searcherManager == null) {
-                    searcherManager = new SearcherManager(acquireReader(), null);
+        while (true) {
+            ReferenceManager<IndexSearcher> searcherManager = this.searcherManager;
+            if (searcherManager == null) {
+                synchronized (lock) {
+                    searcherManager = this.searcherManager;
+                    if (searcherManager == null) {
+                        LiveVersionMap liveVersionMap = this.liveVersionMap;
+                        if (liveVersionMap != null) {
+                            //new searcher sees everything written before
+                            liveVersionMap.beforeRefresh();
+                        }
+                        searcherManager = new SearcherManager(acquireReader(), null);
+                        if (liveVersionMap != null) {
+                            liveVersionMap.afterRefresh(true);
+                            searcherManager.addListener(liveVersionMap);
+                        }
+                        this.searcherManager = searcherManager;
+                    }
                 }
             }
+            try {
+                return searcherManager.acquire();
+            } catch (AlreadyClosedException e) {
+                if (this.searcherManager == searcherManager || !isOpen()) {
+                    throw e;
+                }
+                //replaced concurrently, e.g. with writer
+            }
         }
-        return searcherManager.acquire();
     }
 
     public void release(IndexSearcher searcher) throws IOException {
         if (searcher != null) {
-            searcherManager.release(searcher);
+            ReferenceManager<IndexSearcher> searcherManager = this.searcherManager;
+            if (searcherManager != null) {
+                searcherManager.release(searcher);
+            } else {
+                //searcher manager has been closed meanwhile, e.g. with writer
+                searcher.getIndexReader().decRef();
+            }
         }
     }
 
@@ -291,23 +538,370 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         IndexSearcher searcher = acquireSearcher();
         Query query = search.getQuery() != null ? search.getQuery() : LuceneSearch.MATCH_ALL_QUERY;
         int numHits = (search.getNumHits() != null && search.getNumHits() > 0) ? search.getNumHits() : Integer.MAX_VALUE;
-        if (search.getSort() != null) {
+        boolean totalApproximate = false;
+        if (search.getSort() != null && numHits != Integer.MAX_VALUE && !search.isExactTotal() && isSortedBy(search.getSort())) {
+            //segments sorted by index sort are collected only until top hits are known
+            TopFieldCollector collector = TopFieldCollector.create(search.getSort(), Math.min(numHits, Math.max(1, searcher.getIndexReader().maxDoc())),
+                    true, search.isDoDocScore(), search.isDoMaxScore(), false);
+            searcher.search(query, collector);
+            topDocs = collector.topDocs();
+            totalApproximate = collector.isEarlyTerminated();
+        } else if (search.getSort() != null) {
             topDocs = searcher.search(query, numHits, search.getSort(), search.isDoDocScore(), search.isDoMaxScore());
         } else {
             topDocs = searcher.search(query, numHits);
         }
-        return new SingleLuceneSearchResults(topDocs, searcher, this);
+        return new SingleLuceneSearchResults(topDocs, searcher, this, totalApproximate);
+    }
+
+    /**
+     * Checks whether a given sort is a prefix of index sort
+     * @param sort search sort
+     * @return true if sorted search may terminate collection early
+     */
+    public boolean isSortedBy(Sort sort) {
+        Sort indexSort = this.indexSort;
+        if (indexSort == null || sort == null) {
+            return false;
+        }
+        SortField[] fields = sort.getSort();
+        SortField[] indexFields = indexSort.getSort();
+        if (fields.length > indexFields.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].equals(indexFields[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void addDocument(Iterable<IndexableField> doc) throws IOException {
+        validate(doc);
+        awaitWriteThrottle();
         try (Reference<IndexWriter> writer = provideWriter()) {
             writer.use().addDocument(doc);
+            dropTombstones(doc);
         }
     }
 
+    public void addDocuments(Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+        LuceneSchema schema = this.schema;
+        if (schema != null) {
+            for (Iterable<? extends IndexableField> doc : docs) {
+                schema.validate(doc);
+            }
+        }
+        awaitWriteThrottle();
+        try (Reference<IndexWriter> writer = provideWriter()) {
+            writer.use().addDocuments(docs);
+            for (Iterable<? extends IndexableField> doc : docs) {
+                dropTombstones(doc);
+            }
+        }
+    }
+
+    /**
+     * Starts bulk ingest of documents written in batches by feeder threads
+     * @param options batching options
+     * @return bulk indexer which must be closed to write remaining documents
+     */
+    public BulkIndexer bulk(@NonNull BulkOptions options) {
+        return new BulkIndexer(this, options);
+    }
+
+    /**
+     * Starts offline build, which adds documents to temporary indices built in parallel and finally adds them to this index
+     * @param options build options
+     * @return builder which must be finished, or closed to discard documents
+     * @throws IOException
+     */
+    public OfflineIndexBuilder buildOffline(@NonNull OfflineBuildOptions options) throws IOException {
+        return new OfflineIndexBuilder(this, options);
+    }
+
     public void updateDocument(Term term, Iterable<IndexableField> doc) throws IOException {
+        validate(doc);
+        awaitWriteThrottle();
         try (Reference<IndexWriter> writer = provideWriter()) {
             writer.use().updateDocument(term, doc);
+            dropTombstones(doc);
+        }
+    }
+
+    /**
+     * Written ID is not known to be new anymore
+     */
+    private void dropTombstones(Iterable<? extends IndexableField> doc) {
+        LiveVersionMap liveVersionMap = this.liveVersionMap;
+        String idField = this.idField;
+        if (liveVersionMap == null || idField == null) {
+            return;
+        }
+        for (IndexableField field : doc) {
+            if (idField.equals(field.name()) && field.stringValue() != null) {
+                liveVersionMap.dropTombstone(new BytesRef(field.stringValue()));
+            }
+        }
+    }
+
+    /**
+     * Enables versioned writes and real-time get of documents identified by a given field.
+     * Documents written by acquired writer or bulk indexer bypass the live version map,
+     * so they should not be written concurrently with versioned writes of the same IDs.
+     * @param idField name of indexed keyword field with unique document ID, null to disable
+     * @param bufferDocuments whether documents written since the latest refresh are kept in memory for get
+     */
+    public void setIdField(String idField, boolean bufferDocuments) {
+        synchronized (lock) {
+            if (searcherManager != null && liveVersionMap != null) {
+                searcherManager.removeListener(liveVersionMap);
+            }
+            this.idField = idField;
+            liveVersionMap = idField != null ? new LiveVersionMap(bufferDocuments) : null;
+            if (searcherManager != null && liveVersionMap != null) {
+                searcherManager.addListener(liveVersionMap);
+            }
+        }
+    }
+
+    public void setIdField(String idField) {
+        setIdField(idField, false);
+    }
+
+    private LiveVersionMap checkLiveVersionMap() {
+        LiveVersionMap liveVersionMap = this.liveVersionMap;
+        if (liveVersionMap == null) {
+            throw new IllegalStateException("ID field is not set");
+        }
+        return liveVersionMap;
+    }
+
+    /**
+     * Adds or replaces document with a given ID, with versioned writes it is {@link #putDocument(String, Iterable, long)}
+     * with {@link LiveVersionMap#MATCH_ANY}
+     */
+    public long putDocument(String id, Iterable<? extends IndexableField> doc) throws IOException {
+        return putDocument(id, doc, LiveVersionMap.MATCH_ANY);
+    }
+
+    /**
+     * Adds or replaces document with a given ID, when its current version is the expected one.
+     * Document of ID deleted since the latest refresh is added without delete by ID term.
+     * @param id document ID, which has to be also a value of ID field in document
+     * @param doc document, which must not be modified later if documents are buffered
+     * @param expectedVersion expected current version, {@link LiveVersionMap#NOT_FOUND} to only create
+     *                        or {@link LiveVersionMap#MATCH_ANY}
+     * @return new version of document
+     * @throws VersionConflictException when current version is not the expected one
+     * @throws IOException
+     */
+    public long putDocument(@NonNull String id, @NonNull Iterable<? extends IndexableField> doc, long expectedVersion) throws IOException {
+        LiveVersionMap liveVersionMap = checkLiveVersionMap();
+        checkId(id, doc);
+        validate(doc);
+        awaitWriteThrottle();
+        BytesRef key = new BytesRef(id);
+        synchronized (liveVersionMap.lockFor(key)) {
+            LiveVersionMap.Entry entry = liveVersionMap.get(key);
+            long currentVersion = getVersion(liveVersionMap, key);
+            checkVersion(id, expectedVersion, currentVersion);
+            try (Reference<IndexWriter> writer = provideWriter()) {
+                long version = liveVersionMap.nextVersion(writer.use(), currentVersion);
+                Iterable<IndexableField> versioned = withVersion(doc, version);
+                long seqNo;
+                if (entry != null && entry.isDeleted()) {
+                    //only tombstone proves that ID is new, as not refreshed writes bypassing the map are not seen
+                    seqNo = writer.use().addDocument(versioned);
+                } else {
+                    seqNo = writer.use().updateDocument(new Term(idField, key), versioned);
+                }
+                liveVersionMap.put(key, new LiveVersionMap.Entry(version, seqNo, liveVersionMap.isBufferDocuments() ? doc : null, false));
+                return version;
+            }
+        }
+    }
+
+    /**
+     * Deletes document with a given ID, when its current version is the expected one
+     * @param id document ID
+     * @param expectedVersion expected current version or {@link LiveVersionMap#MATCH_ANY}
+     * @return true if document existed
+     * @throws VersionConflictException when current version is not the expected one
+     * @throws IOException
+     */
+    public boolean deleteDocument(@NonNull String id, long expectedVersion) throws IOException {
+        LiveVersionMap liveVersionMap = checkLiveVersionMap();
+        BytesRef key = new BytesRef(id);
+        synchronized (liveVersionMap.lockFor(key)) {
+            long currentVersion = getVersion(liveVersionMap, key);
+            checkVersion(id, expectedVersion, currentVersion);
+            if (currentVersion == LiveVersionMap.NOT_FOUND) {
+                return false;
+            }
+            try (Reference<IndexWriter> writer = provideWriter()) {
+                long version = liveVersionMap.nextVersion(writer.use(), currentVersion);
+                long seqNo = writer.use().deleteDocuments(new Term(idField, key));
+                liveVersionMap.put(key, new LiveVersionMap.Entry(version, seqNo, null, true));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param id document ID
+     * @return current version of document or {@link LiveVersionMap#NOT_FOUND}
+     * @throws IOException
+     */
+    public long getVersion(@NonNull String id) throws IOException {
+        return getVersion(checkLiveVersionMap(), new BytesRef(id));
+    }
+
+    private long getVersion(LiveVersionMap liveVersionMap, BytesRef key) throws IOException {
+        LiveVersionMap.Entry entry = liveVersionMap.get(key);
+        if (entry != null) {
+            return entry.isDeleted() ? LiveVersionMap.NOT_FOUND : entry.getVersion();
+        }
+
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                int doc = lookup(leaf.reader(), key);
+                if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    NumericDocValues versions = leaf.reader().getNumericDocValues(LiveVersionMap.VERSION_FIELD);
+                    if (versions != null && versions.advanceExact(doc)) {
+                        return versions.longValue();
+                    }
+                    return 1; //written without version
+                }
+            }
+            return LiveVersionMap.NOT_FOUND;
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Gets document by ID in real time: written since the latest refresh from memory (if documents are buffered),
+     * after refresh otherwise
+     * @param id document ID
+     * @return document (stored fields if read from index) or null when not found
+     * @throws IOException
+     */
+    public Document get(@NonNull String id) throws IOException {
+        LiveVersionMap liveVersionMap = checkLiveVersionMap();
+        BytesRef key = new BytesRef(id);
+        LiveVersionMap.Entry entry = liveVersionMap.get(key);
+        if (entry != null) {
+            if (entry.isDeleted()) {
+                return null;
+            }
+            if (entry.getDocument() != null) {
+                Document doc = new Document();
+                for (IndexableField field : entry.getDocument()) {
+                    doc.add(field);
+                }
+                return doc;
+            }
+            ReferenceManager<IndexSearcher> searcherManager = this.searcherManager;
+            if (searcherManager != null) {
+                searcherManager.maybeRefreshBlocking();
+            }
+        }
+
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                int doc = lookup(leaf.reader(), key);
+                if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    return leaf.reader().document(doc);
+                }
+            }
+            return null;
+        } finally {
+            release(searcher);
+        }
+    }
+
+    private int lookup(LeafReader reader, BytesRef key) throws IOException {
+        Terms terms = reader.terms(idField);
+        if (terms == null) {
+            return DocIdSetIterator.NO_MORE_DOCS;
+        }
+        TermsEnum termsEnum = terms.iterator();
+        if (!termsEnum.seekExact(key)) {
+            return DocIdSetIterator.NO_MORE_DOCS;
+        }
+        Bits liveDocs = reader.getLiveDocs();
+        PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+            if (liveDocs == null || liveDocs.get(doc)) {
+                return doc;
+            }
+        }
+        return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    private void checkId(String id, Iterable<? extends IndexableField> doc) {
+        for (IndexableField field : doc) {
+            if (idField.equals(field.name()) && id.equals(field.stringValue())) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Document has no " + idField + " field with value " + id);
+    }
+
+    private static void checkVersion(String id, long expectedVersion, long currentVersion) {
+        if (expectedVersion != LiveVersionMap.MATCH_ANY && expectedVersion != currentVersion) {
+            throw new VersionConflictException(id, expectedVersion, currentVersion);
+        }
+    }
+
+    private static Iterable<IndexableField> withVersion(final Iterable<? extends IndexableField> doc, long version) {
+        final IndexableField versionField = new NumericDocValuesField(LiveVersionMap.VERSION_FIELD, version);
+        return new Iterable<IndexableField>() {
+            @Override
+            public Iterator<IndexableField> iterator() {
+                final Iterator<? extends IndexableField> fields = doc.iterator();
+                return new Iterator<IndexableField>() {
+                    boolean versionReturned = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        return fields.hasNext() || !versionReturned;
+                    }
+
+                    @Override
+                    public IndexableField next() {
+                        if (fields.hasNext()) {
+                            return fields.next();
+                        }
+                        if (versionReturned) {
+                            throw new NoSuchElementException();
+                        }
+                        versionReturned = true;
+                        return versionField;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Validates document against schema, if set
+     * @param doc document
+     * @throws IllegalArgumentException when document does not conform to schema
+     */
+    public void validate(Iterable<? extends IndexableField> doc) {
+        LuceneSchema schema = this.schema;
+        if (schema != null) {
+            schema.validate(doc);
         }
     }
 
@@ -329,6 +923,160 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
     public void commit() throws IOException {
         try (val writer = provideWriter()) {
             writer.use().commit();
+            updateMetadata(writer.use());
+        }
+    }
+
+    /**
+     * Provides metadata of the latest commit without opening index writer or reader
+     * @return metadata or null when nothing has been committed yet
+     * @throws IOException
+     */
+    public LuceneIndexMetadata getMetadata() throws IOException {
+        checkOpenState();
+        LuceneIndexMetadata metadata = this.metadata;
+        if (metadata == null || metadata.getGeneration() != SegmentInfos.getLastCommitGeneration(directory)) {
+            metadata = LuceneIndexMetadata.read(directory);
+            this.metadata = metadata;
+        }
+        return metadata;
+    }
+
+    /**
+     * Number of live documents, including uncommitted ones when writer is open
+     */
+    public long numDocs() throws IOException {
+        IndexWriter writer = this.writer;
+        if (writer != null) {
+            return writer.numDocs();
+        }
+        LuceneIndexMetadata metadata = getMetadata();
+        return metadata != null ? metadata.getDocCount() : 0;
+    }
+
+    /**
+     * Current size of all index files, including flushed but not yet committed segments
+     */
+    public long sizeInBytes() throws IOException {
+        checkOpenState();
+        long size = 0;
+        for (String file : directory.listAll()) {
+            try {
+                size += directory.fileLength(file);
+            } catch (NoSuchFileException | FileNotFoundException ignore) { } //removed concurrently, e.g. by merge
+        }
+        return size;
+    }
+
+    public void setZoneMapFields(@NonNull Collection<String> zoneMapFields) {
+        this.zoneMapFields = Collections.unmodifiableSet(new TreeSet<>(zoneMapFields));
+    }
+
+    /**
+     * Checks whether index may contain documents matching the query, basing on metadata of the latest commit
+     * @param query query to check
+     * @return false only if index surely does not contain any matching document
+     * @throws IOException
+     */
+    public boolean mayMatch(Query query) throws IOException {
+        if (!metadataEnabled || writer != null) {
+            return true; //uncommitted changes may be present
+        }
+        LuceneIndexMetadata metadata = getMetadata();
+        return metadata != null && metadata.mayMatch(query);
+    }
+
+    /**
+     * Checks whether index may contain document with a given ID, basing on ID filters of the latest commit
+     * @param id document ID
+     * @return false only if index surely does not contain such document
+     * @throws IOException
+     */
+    public boolean mayContainId(@NonNull String id) throws IOException {
+        String idField = this.idField;
+        if (!metadataEnabled || idField == null) {
+            return true;
+        }
+        IndexWriter writer = this.writer;
+        if (writer != null && writer.hasUncommittedChanges()) {
+            return true;
+        }
+        IdFilters filters = getIdFilters();
+        return filters == null || !idField.equals(filters.getIdField()) || filters.mightContain(id);
+    }
+
+    /**
+     * Provides ID filters of the latest commit without opening index writer or reader
+     * @return filters or null when not available
+     * @throws IOException
+     */
+    public IdFilters getIdFilters() throws IOException {
+        checkOpenState();
+        IdFilters filters = this.idFilters;
+        if (filters == null || filters.getGeneration() != SegmentInfos.getLastCommitGeneration(directory)) {
+            filters = IdFilters.read(directory);
+            this.idFilters = filters;
+        }
+        return filters;
+    }
+
+    /**
+     * Checks by ID term lookup whether index contains document with a given ID, including not refreshed writes.
+     * When writer is not opened, only the latest commit is read, without opening writer.
+     */
+    public boolean containsId(@NonNull String id) throws IOException {
+        checkOpenState();
+        if (idField == null) {
+            throw new IllegalStateException("ID field is not set");
+        }
+        if (writer != null) {
+            return getVersion(id) != LiveVersionMap.NOT_FOUND;
+        }
+
+        if (!DirectoryReader.indexExists(directory)) {
+            return false;
+        }
+        BytesRef key = new BytesRef(id);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                if (lookup(leaf.reader(), key) != DocIdSetIterator.NO_MORE_DOCS) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected void updateMetadata(IndexWriter writer) throws IOException {
+        if (!metadataEnabled) {
+            return;
+        }
+
+        //commit without changes keeps generation, which sidecar files are already computed for
+        long generation = SegmentInfos.getLastCommitGeneration(directory);
+        LuceneIndexMetadata current = this.metadata;
+        IdFilters currentFilters = this.idFilters;
+        if (current != null && current.getGeneration() == generation
+                && (idField == null || (currentFilters != null && currentFilters.getGeneration() == generation))) {
+            return;
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(writer, false, false)) {
+            LuceneIndexMetadata metadata = LuceneIndexMetadata.compute(directory, reader, timestampField, zoneMapFields);
+            if (metadata != null) {
+                metadata.write(directory);
+                this.metadata = metadata;
+
+                String idField = this.idField;
+                if (idField != null) {
+                    IdFilters previous = idFilters != null ? idFilters : IdFilters.load(directory);
+                    IdFilters filters = IdFilters.compute(metadata.getGeneration(), reader, idField, previous);
+                    if (filters != null) {
+                        filters.write(directory);
+                    }
+                    idFilters = filters;
+                }
+            }
         }
     }
 
@@ -339,10 +1087,43 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         }
     }
 
+    /**
+     * @return bytes used by buffered documents and deletions of opened writer, 0 when writer is not opened
+     */
+    public long ramBytesUsed() {
+        IndexWriter writer = this.writer;
+        if (writer == null || !writer.isOpen()) {
+            return 0;
+        }
+        return writer.ramBytesUsed();
+    }
+
+    /**
+     * Flushes buffered documents of opened writer to a new segment, without opening writer or throttling
+     * @return false when writer is not opened
+     * @throws IOException
+     */
+    public boolean flushBuffer() throws IOException {
+        IndexWriter writer = this.writer;
+        if (writer == null || !writer.isOpen()) {
+            return false;
+        }
+        try {
+            writer.flush();
+        } catch (AlreadyClosedException ignore) {
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public void clear() throws IOException {
         try (val writer = provideWriter()) {
             writer.use().deleteAll();
+            LiveVersionMap liveVersionMap = this.liveVersionMap;
+            if (liveVersionMap != null) {
+                liveVersionMap.clear();
+            }
         }
     }
 
@@ -367,7 +1148,7 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
     @Override
     public void close() throws IOException {
         synchronized (lock) {
-            if (isOpen()) {
+            if (isOpen() && writer != null) {
                 try {
                     flush();
                 } catch (AlreadyClosedException ignore) { }
@@ -378,6 +1159,10 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
                 searcherManager = null;
             }
             if (writer != null) {
+                if (metadataEnabled && writer.isOpen() && writer.getConfig().getCommitOnClose()) {
+                    writer.commit();
+                    updateMetadata(writer);
+                }
                 writer.close();
                 writer = null;
             }
@@ -390,6 +1175,29 @@ public class LuceneIndex implements LuceneIndexOperations, Closeable {
         }
     }
 
+    /**
+     * Closes index without flushing or committing pending changes,
+     * intended for indices that are going to be deleted anyway.
+     */
+    public void discard() throws IOException {
+        synchronized (lock) {
+            if (searcherManager != null) {
+                searcherManager.close();
+                searcherManager = null;
+            }
+            if (writer != null) {
+                writer.rollback();
+                writer = null;
+            }
+            if (owningDirectory) {
+                if (directory != null) {
+                    directory.close();
+                    directory = null;
+                }
+            }
+        }
+    }
+
     public boolean isOpen() {
         return directory != null;
     }
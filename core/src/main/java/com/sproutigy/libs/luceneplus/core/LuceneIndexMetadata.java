@@ -0,0 +1,387 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Data;
+import lombok.NonNull;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.FutureArrays;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+
+/**
+ * Lightweight statistics of index commit, persisted beside index files,
+ * so they may be read without opening any index writer or reader.
+ */
+@Data
+public class LuceneIndexMetadata {
+    public static final String FILE_NAME = "luceneplus.metadata";
+    private static final String TEMP_FILE_PREFIX = "luceneplus";
+    private static final String TEMP_FILE_SUFFIX = "metadata";
+    private static final String ZONE_MAP_PREFIX = "zoneMap.";
+    private static final String COMMIT_DATA_PREFIX = "commitData.";
+
+    private long generation;
+    private long docCount;
+    private long deletedDocCount;
+    private long sizeInBytes;
+    private int segmentCount;
+    private Long commitTimestamp;
+
+    private String timestampField;
+    private Long minTimestamp;
+    private Long maxTimestamp;
+
+    /**
+     * Fields which point values bounds (zone maps) have been recorded.
+     * Field without bounds recorded has no values in the index.
+     */
+    private Set<String> zoneMapFields = new TreeSet<>();
+    private Map<String, byte[]> minPackedValues = new TreeMap<>();
+    private Map<String, byte[]> maxPackedValues = new TreeMap<>();
+
+    /**
+     * User data of the commit
+     */
+    private Map<String, String> commitData = new TreeMap<>();
+
+
+    public boolean isEmpty() {
+        return docCount == 0;
+    }
+
+    public boolean hasTimeRange() {
+        return minTimestamp != null && maxTimestamp != null;
+    }
+
+    /**
+     * Checks whether index may contain documents with timestamp in given range.
+     * When time range of the index is unknown, it is assumed that it may.
+     * @param from lowest timestamp (inclusive), null for unbounded
+     * @param to highest timestamp (inclusive), null for unbounded
+     * @return false only if index surely does not contain such documents
+     */
+    public boolean mayContainTimestamps(Long from, Long to) {
+        if (isEmpty()) {
+            return false;
+        }
+        if (!hasTimeRange()) {
+            return true;
+        }
+        return (from == null || maxTimestamp >= from) && (to == null || minTimestamp <= to);
+    }
+
+    /**
+     * Checks required top-level range clauses of the query against recorded timestamp bounds and zone maps.
+     * @param query query to be checked
+     * @return false only if index surely does not contain any document matching the query
+     */
+    public boolean mayMatch(Query query) {
+        if (isEmpty()) {
+            return false;
+        }
+        return query == null || mayMatchRequired(query);
+    }
+
+    private boolean mayMatchRequired(Query query) {
+        if (query instanceof PointRangeQuery) {
+            return mayMatchRange((PointRangeQuery) query);
+        }
+        if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (clause.isRequired() && !mayMatchRequired(clause.getQuery())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (query instanceof IndexOrDocValuesQuery) {
+            return mayMatchRequired(((IndexOrDocValuesQuery) query).getIndexQuery());
+        }
+        if (query instanceof ConstantScoreQuery) {
+            return mayMatchRequired(((ConstantScoreQuery) query).getQuery());
+        }
+        if (query instanceof BoostQuery) {
+            return mayMatchRequired(((BoostQuery) query).getQuery());
+        }
+        return true;
+    }
+
+    private boolean mayMatchRange(PointRangeQuery query) {
+        String field = query.getField();
+        byte[] min;
+        byte[] max;
+        if (zoneMapFields.contains(field)) {
+            min = minPackedValues.get(field);
+            max = maxPackedValues.get(field);
+            if (min == null || max == null) {
+                return false; //no values at all
+            }
+        } else if (field.equals(timestampField) && hasTimeRange()) {
+            min = new byte[Long.SIZE / Byte.SIZE];
+            max = new byte[Long.SIZE / Byte.SIZE];
+            LongPoint.encodeDimension(minTimestamp, min, 0);
+            LongPoint.encodeDimension(maxTimestamp, max, 0);
+        } else {
+            return true;
+        }
+
+        int numDims = query.getNumDims();
+        int bytesPerDim = query.getBytesPerDim();
+        if (min.length != numDims * bytesPerDim || max.length != min.length) {
+            return true;
+        }
+
+        byte[] lower = query.getLowerPoint();
+        byte[] upper = query.getUpperPoint();
+        for (int dim = 0; dim < numDims; dim++) {
+            int offset = dim * bytesPerDim;
+            int end = offset + bytesPerDim;
+            if (FutureArrays.compareUnsigned(max, offset, end, lower, offset, end) < 0
+                    || FutureArrays.compareUnsigned(min, offset, end, upper, offset, end) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Provides metadata of the latest commit from the sidecar file.
+     * When sidecar file is missing or outdated, statistics are computed from the commit itself
+     * and timestamp bounds are not available.
+     * @param directory index directory
+     * @return metadata or null if there's no commit in the directory
+     * @throws IOException
+     */
+    public static LuceneIndexMetadata read(@NonNull Directory directory) throws IOException {
+        String[] files = directory.listAll();
+        long generation = SegmentInfos.getLastCommitGeneration(files);
+        if (generation < 0) {
+            return null;
+        }
+
+        if (Arrays.asList(files).contains(FILE_NAME)) {
+            LuceneIndexMetadata metadata = load(directory);
+            if (metadata != null && metadata.getGeneration() == generation) {
+                return metadata;
+            }
+        }
+
+        try {
+            return fromCommit(SegmentInfos.readLatestCommit(directory));
+        } catch (IndexNotFoundException e) {
+            return null;
+        }
+    }
+
+    public static LuceneIndexMetadata fromCommit(@NonNull SegmentInfos segmentInfos) throws IOException {
+        LuceneIndexMetadata metadata = new LuceneIndexMetadata();
+        metadata.setGeneration(segmentInfos.getGeneration());
+        metadata.setSegmentCount(segmentInfos.size());
+        long docCount = 0;
+        long deletedDocCount = 0;
+        long sizeInBytes = 0;
+        for (SegmentCommitInfo info : segmentInfos) {
+            docCount += info.info.maxDoc() - info.getDelCount();
+            deletedDocCount += info.getDelCount();
+            sizeInBytes += info.sizeInBytes();
+        }
+        metadata.setDocCount(docCount);
+        metadata.setDeletedDocCount(deletedDocCount);
+        metadata.setSizeInBytes(sizeInBytes);
+        metadata.getCommitData().putAll(segmentInfos.getUserData());
+        return metadata;
+    }
+
+    /**
+     * Computes metadata of the latest commit, reading timestamp bounds from points of the provided reader
+     * @param directory index directory
+     * @param reader reader containing at least all the documents of the latest commit
+     * @param timestampField name of long point field that keeps timestamp, may be null
+     * @return metadata or null if there's no commit in the directory
+     * @throws IOException
+     */
+    public static LuceneIndexMetadata compute(@NonNull Directory directory, @NonNull IndexReader reader, String timestampField) throws IOException {
+        return compute(directory, reader, timestampField, Collections.<String>emptySet());
+    }
+
+    /**
+     * Computes metadata of the latest commit, reading timestamp bounds and zone maps from points of the provided reader
+     * @param directory index directory
+     * @param reader reader containing at least all the documents of the latest commit
+     * @param timestampField name of long point field that keeps timestamp, may be null
+     * @param zoneMapFields names of point fields which bounds should be recorded
+     * @return metadata or null if there's no commit in the directory
+     * @throws IOException
+     */
+    public static LuceneIndexMetadata compute(@NonNull Directory directory, @NonNull IndexReader reader, String timestampField, @NonNull Collection<String> zoneMapFields) throws IOException {
+        LuceneIndexMetadata metadata;
+        try {
+            metadata = fromCommit(SegmentInfos.readLatestCommit(directory));
+        } catch (IndexNotFoundException e) {
+            return null;
+        }
+        metadata.setCommitTimestamp(System.currentTimeMillis());
+
+        if (timestampField != null) {
+            metadata.setTimestampField(timestampField);
+            byte[] min = PointValues.getMinPackedValue(reader, timestampField);
+            byte[] max = PointValues.getMaxPackedValue(reader, timestampField);
+            if (min != null && max != null && min.length == Long.SIZE / Byte.SIZE) {
+                metadata.setMinTimestamp(LongPoint.decodeDimension(min, 0));
+                metadata.setMaxTimestamp(LongPoint.decodeDimension(max, 0));
+            }
+        }
+
+        for (String field : zoneMapFields) {
+            metadata.getZoneMapFields().add(field);
+            byte[] min = PointValues.getMinPackedValue(reader, field);
+            byte[] max = PointValues.getMaxPackedValue(reader, field);
+            if (min != null && max != null) {
+                metadata.getMinPackedValues().put(field, min);
+                metadata.getMaxPackedValues().put(field, max);
+            }
+        }
+        return metadata;
+    }
+
+    public void write(@NonNull Directory directory) throws IOException {
+        Properties properties = toProperties();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        properties.store(buffer, null);
+        byte[] bytes = buffer.toByteArray();
+
+        String tempFileName;
+        try (IndexOutput output = directory.createTempOutput(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, IOContext.DEFAULT)) {
+            output.writeBytes(bytes, bytes.length);
+            tempFileName = output.getName();
+        }
+
+        try {
+            directory.sync(Arrays.asList(tempFileName));
+            try {
+                directory.rename(tempFileName, FILE_NAME);
+            } catch (FileAlreadyExistsException e) {
+                directory.deleteFile(FILE_NAME);
+                directory.rename(tempFileName, FILE_NAME);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                directory.deleteFile(tempFileName);
+            } catch (IOException ignore) { }
+            throw e;
+        }
+    }
+
+    private static LuceneIndexMetadata load(Directory directory) throws IOException {
+        byte[] bytes;
+        try (IndexInput input = directory.openInput(FILE_NAME, IOContext.READONCE)) {
+            bytes = new byte[(int) input.length()];
+            input.readBytes(bytes, 0, bytes.length);
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes));
+        try {
+            return fromProperties(properties);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("generation", Long.toString(generation));
+        properties.setProperty("docCount", Long.toString(docCount));
+        properties.setProperty("deletedDocCount", Long.toString(deletedDocCount));
+        properties.setProperty("sizeInBytes", Long.toString(sizeInBytes));
+        properties.setProperty("segmentCount", Integer.toString(segmentCount));
+        setOptional(properties, "commitTimestamp", commitTimestamp);
+        if (timestampField != null) {
+            properties.setProperty("timestampField", timestampField);
+        }
+        setOptional(properties, "minTimestamp", minTimestamp);
+        setOptional(properties, "maxTimestamp", maxTimestamp);
+        for (String field : zoneMapFields) {
+            properties.setProperty(ZONE_MAP_PREFIX + field, "");
+            byte[] min = minPackedValues.get(field);
+            byte[] max = maxPackedValues.get(field);
+            if (min != null && max != null) {
+                properties.setProperty(ZONE_MAP_PREFIX + field, toHex(min) + ":" + toHex(max));
+            }
+        }
+        for (Map.Entry<String, String> entry : commitData.entrySet()) {
+            properties.setProperty(COMMIT_DATA_PREFIX + entry.getKey(), entry.getValue());
+        }
+        return properties;
+    }
+
+    private static LuceneIndexMetadata fromProperties(Properties properties) {
+        LuceneIndexMetadata metadata = new LuceneIndexMetadata();
+        metadata.setGeneration(Long.parseLong(properties.getProperty("generation", "-1")));
+        metadata.setDocCount(Long.parseLong(properties.getProperty("docCount", "0")));
+        metadata.setDeletedDocCount(Long.parseLong(properties.getProperty("deletedDocCount", "0")));
+        metadata.setSizeInBytes(Long.parseLong(properties.getProperty("sizeInBytes", "0")));
+        metadata.setSegmentCount(Integer.parseInt(properties.getProperty("segmentCount", "0")));
+        metadata.setCommitTimestamp(getOptional(properties, "commitTimestamp"));
+        metadata.setTimestampField(properties.getProperty("timestampField"));
+        metadata.setMinTimestamp(getOptional(properties, "minTimestamp"));
+        metadata.setMaxTimestamp(getOptional(properties, "maxTimestamp"));
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(ZONE_MAP_PREFIX)) {
+                String field = key.substring(ZONE_MAP_PREFIX.length());
+                String value = properties.getProperty(key);
+                metadata.getZoneMapFields().add(field);
+                int separator = value.indexOf(':');
+                if (separator > 0) {
+                    metadata.getMinPackedValues().put(field, fromHex(value.substring(0, separator)));
+                    metadata.getMaxPackedValues().put(field, fromHex(value.substring(separator + 1)));
+                }
+            } else if (key.startsWith(COMMIT_DATA_PREFIX)) {
+                metadata.getCommitData().put(key.substring(COMMIT_DATA_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return metadata;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder s = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            s.append(Character.forDigit((b >> 4) & 0xF, 16));
+            s.append(Character.forDigit(b & 0xF, 16));
+        }
+        return s.toString();
+    }
+
+    private static byte[] fromHex(String s) {
+        if (s.length() % 2 != 0) {
+            throw new NumberFormatException("Invalid hex string: " + s);
+        }
+        byte[] bytes = new byte[s.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static void setOptional(Properties properties, String key, Long value) {
+        if (value != null) {
+            properties.setProperty(key, Long.toString(value));
+        }
+    }
+
+    private static Long getOptional(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value != null ? Long.valueOf(value) : null;
+    }
+}
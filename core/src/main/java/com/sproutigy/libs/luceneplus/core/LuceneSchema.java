@@ -0,0 +1,415 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+
+import java.util.*;
+
+/**
+ * Typed field definitions of index documents. Validates written documents, provides {@link DocumentTemplate}
+ * writing fields the same way as {@link LuceneFields}, and builds queries and sorts matching that encoding,
+ * e.g. range on field both indexed and doc-valued is run on points or doc values, whichever is cheaper.
+ */
+public class LuceneSchema {
+    private final Map<String, DocumentTemplate.Definition> fields;
+    private final Set<String> required;
+
+    /**
+     * Whether fields not defined in schema are rejected
+     */
+    @Getter
+    private final boolean strict;
+
+    private final DocumentTemplate template;
+
+    private LuceneSchema(DocumentTemplate template, Set<String> required, boolean strict) {
+        Map<String, DocumentTemplate.Definition> fields = new LinkedHashMap<>();
+        for (DocumentTemplate.Definition definition : template.getDefinitions()) {
+            fields.put(definition.getName(), definition);
+        }
+        for (String name : required) {
+            if (!fields.containsKey(name)) {
+                throw new IllegalArgumentException("Required field " + name + " is not defined");
+            }
+        }
+        this.fields = Collections.unmodifiableMap(fields);
+        this.required = Collections.unmodifiableSet(new HashSet<>(required));
+        this.strict = strict;
+        this.template = template;
+    }
+
+    public Collection<DocumentTemplate.Definition> getFields() {
+        return fields.values();
+    }
+
+    public DocumentTemplate.Definition getField(String name) {
+        return fields.get(name);
+    }
+
+    public Set<String> getRequired() {
+        return required;
+    }
+
+    /**
+     * @return template writing all fields of schema
+     */
+    public DocumentTemplate template() {
+        return template;
+    }
+
+    private DocumentTemplate.Definition field(String name) {
+        DocumentTemplate.Definition definition = fields.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Field " + name + " is not defined in schema");
+        }
+        return definition;
+    }
+
+    /**
+     * Checks that document has all required fields and every field is encoded as defined
+     * @param doc document
+     * @throws IllegalArgumentException when document does not conform to schema
+     */
+    public void validate(@NonNull Iterable<? extends IndexableField> doc) {
+        Set<String> missing = required.isEmpty() ? Collections.<String>emptySet() : new HashSet<>(required);
+        for (IndexableField field : doc) {
+            DocumentTemplate.Definition definition = fields.get(field.name());
+            if (definition == null) {
+                if (strict) {
+                    throw new IllegalArgumentException("Field " + field.name() + " is not defined in schema");
+                }
+                continue;
+            }
+            String error = check(definition, field);
+            if (error != null) {
+                throw new IllegalArgumentException("Field " + field.name() + " (" + definition.getType() + ") " + error);
+            }
+            if (!missing.isEmpty()) {
+                missing.remove(field.name());
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Missing required fields: " + missing);
+        }
+    }
+
+    private static String check(DocumentTemplate.Definition definition, IndexableField field) {
+        LuceneFields.FieldOptions options = definition.getOptions();
+        org.apache.lucene.index.IndexableFieldType type = field.fieldType();
+        boolean point = type.pointDimensionCount() > 0;
+        boolean inverted = type.indexOptions() != IndexOptions.NONE;
+        boolean docValue = type.docValuesType() != DocValuesType.NONE;
+
+        if ((point || inverted) && !options.isIndex()) {
+            return "is not indexed";
+        }
+        if (docValue && !options.isDocValue()) {
+            return "has no doc values";
+        }
+        if (type.stored() && !options.isStore() && definition.getType() != DocumentTemplate.Type.BINARY) {
+            return "is not stored";
+        }
+
+        switch (definition.getType()) {
+            case KEYWORD:
+            case TEXT:
+                if (point || (docValue && type.docValuesType() != DocValuesType.BINARY) || (!docValue && field.stringValue() == null)) {
+                    return "expects string value";
+                }
+                if (inverted && type.tokenized() != (definition.getType() == DocumentTemplate.Type.TEXT)) {
+                    return definition.getType() == DocumentTemplate.Type.TEXT ? "expects analyzed value" : "expects not analyzed value";
+                }
+                return null;
+            case BOOLEAN:
+                if (!LuceneFields.Boolean.TRUE.equals(field.stringValue()) && !LuceneFields.Boolean.FALSE.equals(field.stringValue())) {
+                    return "expects " + LuceneFields.Boolean.TRUE + " or " + LuceneFields.Boolean.FALSE + " value";
+                }
+                return null;
+            case LONG:
+            case INTEGER:
+            case DOUBLE:
+            case FLOAT:
+                int bytes = definition.getType() == DocumentTemplate.Type.LONG || definition.getType() == DocumentTemplate.Type.DOUBLE ? 8 : 4;
+                if (inverted || (point && (type.pointDimensionCount() != 1 || type.pointNumBytes() != bytes))
+                        || (docValue && type.docValuesType() != DocValuesType.NUMERIC)) {
+                    return "expects numeric value";
+                }
+                if (!point && !docValue && !isStoredNumber(definition.getType(), field.numericValue())) {
+                    return "expects stored " + definition.getType().name().toLowerCase() + " value";
+                }
+                return null;
+            case BINARY:
+                if (point || inverted || docValue || field.binaryValue() == null) {
+                    return "expects stored binary value";
+                }
+                return null;
+        }
+        return null;
+    }
+
+    private static boolean isStoredNumber(DocumentTemplate.Type type, Number value) {
+        switch (type) {
+            case LONG: return value instanceof java.lang.Long;
+            case INTEGER: return value instanceof java.lang.Integer;
+            case DOUBLE: return value instanceof java.lang.Double;
+            default: return value instanceof java.lang.Float;
+        }
+    }
+
+    /**
+     * Matches exact value (not analyzed for text fields)
+     * @param name field name
+     * @param value string, boolean or number, depending on field type
+     * @return query
+     */
+    public Query exact(String name, @NonNull Object value) {
+        DocumentTemplate.Definition definition = field(name);
+        switch (definition.getType()) {
+            case KEYWORD:
+            case TEXT:
+                checkIndexed(definition);
+                return new TermQuery(new Term(name, value.toString()));
+            case BOOLEAN:
+                checkIndexed(definition);
+                return new TermQuery(new Term(name, (java.lang.Boolean) value ? LuceneFields.Boolean.TRUE : LuceneFields.Boolean.FALSE));
+            case BINARY:
+                throw new IllegalArgumentException("Field " + name + " is binary and cannot be queried");
+            default:
+                return range(name, (Number) value, (Number) value);
+        }
+    }
+
+    /**
+     * Matches values within inclusive bounds
+     * @param name field name of keyword type
+     * @param from lower bound or null
+     * @param to upper bound or null
+     * @return query
+     */
+    public Query range(String name, String from, String to) {
+        DocumentTemplate.Definition definition = field(name);
+        if (definition.getType() != DocumentTemplate.Type.KEYWORD) {
+            throw new IllegalArgumentException("Field " + name + " is " + definition.getType() + ", not " + DocumentTemplate.Type.KEYWORD);
+        }
+        checkIndexed(definition);
+        return TermRangeQuery.newStringRange(name, from, to, true, true);
+    }
+
+    /**
+     * Matches numbers within inclusive bounds. When field is both indexed and doc-valued, points are used
+     * to lead selective queries and doc values to verify candidates of others (except integers, matched by points only).
+     * @param name field name of numeric type
+     * @param from lower bound or null
+     * @param to upper bound or null
+     * @return query
+     */
+    public Query range(String name, Number from, Number to) {
+        DocumentTemplate.Definition definition = field(name);
+        LuceneFields.FieldOptions options = definition.getOptions();
+        Query pointQuery = options.isIndex() ? pointRange(definition, from, to) : null;
+        if (pointQuery != null && definition.getType() == DocumentTemplate.Type.INTEGER) {
+            //doc values of integers are written as floats, which match other documents above 2^24 than exact points
+            return pointQuery;
+        }
+        Query docValuesQuery = options.isDocValue() ? docValuesRange(definition, from, to) : null;
+        if (pointQuery != null && docValuesQuery != null) {
+            return new IndexOrDocValuesQuery(pointQuery, docValuesQuery);
+        }
+        if (pointQuery != null) {
+            return pointQuery;
+        }
+        if (docValuesQuery != null) {
+            return docValuesQuery;
+        }
+        throw new IllegalStateException("Field " + name + " is neither indexed nor doc-valued");
+    }
+
+    private static Query pointRange(DocumentTemplate.Definition definition, Number from, Number to) {
+        String name = definition.getName();
+        switch (definition.getType()) {
+            case LONG:
+                return LongPoint.newRangeQuery(name, from != null ? from.longValue() : java.lang.Long.MIN_VALUE, to != null ? to.longValue() : java.lang.Long.MAX_VALUE);
+            case INTEGER:
+                return IntPoint.newRangeQuery(name, from != null ? from.intValue() : java.lang.Integer.MIN_VALUE, to != null ? to.intValue() : java.lang.Integer.MAX_VALUE);
+            case DOUBLE:
+                return DoublePoint.newRangeQuery(name, from != null ? from.doubleValue() : java.lang.Double.NEGATIVE_INFINITY, to != null ? to.doubleValue() : java.lang.Double.POSITIVE_INFINITY);
+            case FLOAT:
+                return FloatPoint.newRangeQuery(name, from != null ? from.floatValue() : java.lang.Float.NEGATIVE_INFINITY, to != null ? to.floatValue() : java.lang.Float.POSITIVE_INFINITY);
+            default:
+                throw new IllegalArgumentException("Field " + name + " is " + definition.getType() + ", not numeric");
+        }
+    }
+
+    private static Query docValuesRange(DocumentTemplate.Definition definition, Number from, Number to) {
+        String name = definition.getName();
+        switch (definition.getType()) {
+            case LONG:
+                return NumericDocValuesField.newSlowRangeQuery(name, from != null ? from.longValue() : java.lang.Long.MIN_VALUE, to != null ? to.longValue() : java.lang.Long.MAX_VALUE);
+            case DOUBLE:
+                double lower = from != null ? from.doubleValue() : java.lang.Double.NEGATIVE_INFINITY;
+                double upper = to != null ? to.doubleValue() : java.lang.Double.POSITIVE_INFINITY;
+                if (lower > upper) {
+                    return new MatchNoDocsQuery();
+                }
+                return signMagnitudeRange(name, java.lang.Double.doubleToRawLongBits(lower), java.lang.Double.doubleToRawLongBits(upper), java.lang.Long.MIN_VALUE);
+            case INTEGER: //written as float, exact up to 2^24
+            case FLOAT:
+                float lowerFloat = from != null ? from.floatValue() : java.lang.Float.NEGATIVE_INFINITY;
+                float upperFloat = to != null ? to.floatValue() : java.lang.Float.POSITIVE_INFINITY;
+                if (lowerFloat > upperFloat) {
+                    return new MatchNoDocsQuery();
+                }
+                return signMagnitudeRange(name, java.lang.Float.floatToRawIntBits(lowerFloat), java.lang.Float.floatToRawIntBits(upperFloat), java.lang.Integer.MIN_VALUE);
+            default:
+                throw new IllegalArgumentException("Field " + name + " is " + definition.getType() + ", not numeric");
+        }
+    }
+
+    /**
+     * Raw bits of floating point numbers grow with magnitude, so negative numbers are in reversed order
+     * (from negative zero bits up to the most negative)
+     */
+    private static Query signMagnitudeRange(String name, long lowerBits, long upperBits, long negativeZeroBits) {
+        if (lowerBits >= 0) {
+            return NumericDocValuesField.newSlowRangeQuery(name, lowerBits, upperBits);
+        }
+        if (upperBits < 0) {
+            return NumericDocValuesField.newSlowRangeQuery(name, upperBits, lowerBits);
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(NumericDocValuesField.newSlowRangeQuery(name, negativeZeroBits, lowerBits), BooleanClause.Occur.SHOULD);
+        builder.add(NumericDocValuesField.newSlowRangeQuery(name, 0, upperBits), BooleanClause.Occur.SHOULD);
+        return new ConstantScoreQuery(builder.build());
+    }
+
+    /**
+     * Sorts by doc values of field, using type matching its encoding
+     * @param name field name
+     * @param reverse whether descending
+     * @return sort field
+     */
+    public SortField sortField(String name, boolean reverse) {
+        DocumentTemplate.Definition definition = field(name);
+        if (!definition.getOptions().isDocValue()) {
+            throw new IllegalStateException("Field " + name + " has no doc values");
+        }
+        switch (definition.getType()) {
+            case KEYWORD:
+            case TEXT:
+                return new SortField(name, SortField.Type.STRING_VAL, reverse);
+            case LONG:
+                return new SortField(name, SortField.Type.LONG, reverse);
+            case DOUBLE:
+                return new SortField(name, SortField.Type.DOUBLE, reverse);
+            case INTEGER:
+            case FLOAT:
+                return new SortField(name, SortField.Type.FLOAT, reverse);
+            default:
+                throw new IllegalArgumentException("Field " + name + " is " + definition.getType() + " and cannot be sorted");
+        }
+    }
+
+    /**
+     * Reads stored value of field as its type
+     * @param doc stored document
+     * @param name field name
+     * @return value or null
+     */
+    public Object getValue(@NonNull Document doc, String name) {
+        DocumentTemplate.Definition definition = field(name);
+        IndexableField field = doc.getField(name);
+        switch (definition.getType()) {
+            case KEYWORD: return LuceneFields.Keyword.get(field);
+            case TEXT: return LuceneFields.Text.get(field);
+            case BOOLEAN: return LuceneFields.Boolean.get(field);
+            case LONG: return LuceneFields.Long.get(field);
+            case INTEGER: return LuceneFields.Integer.get(field);
+            case DOUBLE: return LuceneFields.Double.get(field);
+            case FLOAT: return LuceneFields.Float.get(field);
+            default: return LuceneFields.Binary.get(field);
+        }
+    }
+
+    private static void checkIndexed(DocumentTemplate.Definition definition) {
+        if (!definition.getOptions().isIndex()) {
+            throw new IllegalStateException("Field " + definition.getName() + " is not indexed");
+        }
+    }
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final DocumentTemplate.Builder definitions = DocumentTemplate.builder();
+        private final Set<String> required = new LinkedHashSet<>();
+        private boolean strict = false;
+
+        public Builder keyword(String name, LuceneFields.FieldOptions options) {
+            definitions.addKeyword(name, options);
+            return this;
+        }
+
+        public Builder text(String name, LuceneFields.FieldOptions options) {
+            definitions.addText(name, options);
+            return this;
+        }
+
+        public Builder bool(String name, LuceneFields.FieldOptions options) {
+            definitions.addBoolean(name, options);
+            return this;
+        }
+
+        public Builder longField(String name, LuceneFields.FieldOptions options) {
+            definitions.addLong(name, options);
+            return this;
+        }
+
+        public Builder intField(String name, LuceneFields.FieldOptions options) {
+            definitions.addInteger(name, options);
+            return this;
+        }
+
+        public Builder doubleField(String name, LuceneFields.FieldOptions options) {
+            definitions.addDouble(name, options);
+            return this;
+        }
+
+        public Builder floatField(String name, LuceneFields.FieldOptions options) {
+            definitions.addFloat(name, options);
+            return this;
+        }
+
+        public Builder binary(String name) {
+            definitions.addBinary(name);
+            return this;
+        }
+
+        /**
+         * Documents without any of these fields are rejected
+         */
+        public Builder required(String... names) {
+            required.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * Fields not defined in schema are rejected
+         */
+        public Builder strict() {
+            this.strict = true;
+            return this;
+        }
+
+        public LuceneSchema build() {
+            return new LuceneSchema(definitions.build(), required, strict);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
+import com.sproutigy.libs.luceneplus.core.search.ShardedLuceneSearchResults;
+import com.sproutigy.libs.luceneplus.core.search.SingleLuceneSearchResults;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Logical index split into shards, each with its own writer, merge scheduler and directory.
+ * Documents are routed by hash of their ID field value, searches run on all shards in parallel and top hits are merged.
+ * Number of shards must not change once documents are written, as it would change routing.
+ */
+public class ShardedLuceneIndex implements LuceneIndexOperations, Closeable {
+    private static final int ROUTING_SEED = 0;
+
+    @Getter
+    private final String idField;
+
+    private final List<LuceneIndex> shards;
+
+    private final ExecutorService executor;
+
+    private interface ShardOperation<T> {
+        T apply(LuceneIndex shard) throws IOException;
+    }
+
+    public ShardedLuceneIndex(@NonNull String idField, @NonNull LuceneIndex... shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("No shards");
+        }
+        this.idField = idField;
+        this.shards = Collections.unmodifiableList(Arrays.asList(shards.clone()));
+
+        executor = Executors.newFixedThreadPool(shards.length, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, ShardedLuceneIndex.this.toString() + "-shard-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Opens or creates shards in subdirectories of a given path
+     * @param path root path of shards
+     * @param numShards number of shards
+     * @param idField name of field which value routes documents
+     * @throws IOException
+     */
+    public ShardedLuceneIndex(@NonNull Path path, int numShards, @NonNull String idField) throws IOException {
+        this(idField, openShards(path, numShards));
+    }
+
+    private static LuceneIndex[] openShards(Path path, int numShards) throws IOException {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("numShards < 1");
+        }
+        LuceneIndex[] shards = new LuceneIndex[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new LuceneIndex(path.resolve("shard-" + i));
+        }
+        return shards;
+    }
+
+    public List<LuceneIndex> getShards() {
+        return shards;
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    public LuceneIndex shard(@NonNull BytesRef id) {
+        return shards.get(shardIndex(id));
+    }
+
+    private int shardIndex(BytesRef id) {
+        //fixed seed, as routing must not change between runs
+        return (StringHelper.murmurhash3_x86_32(id, ROUTING_SEED) & Integer.MAX_VALUE) % shards.size();
+    }
+
+    public LuceneIndex shard(@NonNull String id) {
+        return shard(new BytesRef(id));
+    }
+
+    public LuceneIndex shard(@NonNull Term idTerm) {
+        if (!idField.equals(idTerm.field())) {
+            throw new IllegalArgumentException("Documents are routed by " + idField + " field, not by " + idTerm.field());
+        }
+        return shard(idTerm.bytes());
+    }
+
+    private int shardIndex(Iterable<? extends IndexableField> doc) {
+        for (IndexableField field : doc) {
+            if (idField.equals(field.name())) {
+                if (field.binaryValue() != null) {
+                    return shardIndex(field.binaryValue());
+                }
+                if (field.stringValue() != null) {
+                    return shardIndex(new BytesRef(field.stringValue()));
+                }
+            }
+        }
+        throw new IllegalArgumentException("Document has no value of " + idField + " field");
+    }
+
+    public void addDocument(@NonNull Iterable<IndexableField> doc) throws IOException {
+        shards.get(shardIndex(doc)).addDocument(doc);
+    }
+
+    /**
+     * Adds documents with a single writer acquisition per shard
+     * @param docs documents
+     * @throws IOException
+     */
+    public void addDocuments(@NonNull Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+        List<List<Iterable<? extends IndexableField>>> routed = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            routed.add(new ArrayList<Iterable<? extends IndexableField>>());
+        }
+        for (Iterable<? extends IndexableField> doc : docs) {
+            routed.get(shardIndex(doc)).add(doc);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (!routed.get(i).isEmpty()) {
+                shards.get(i).addDocuments(routed.get(i));
+            }
+        }
+    }
+
+    public void updateDocument(@NonNull Term idTerm, @NonNull Iterable<IndexableField> doc) throws IOException {
+        shard(idTerm).updateDocument(idTerm, doc);
+    }
+
+    @Override
+    public void setOpenMode(LuceneOpenMode openMode) {
+        for (LuceneIndex shard : shards) {
+            shard.setOpenMode(openMode);
+        }
+    }
+
+    @Override
+    public LuceneOpenMode getOpenMode() {
+        return shards.get(0).getOpenMode();
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) {
+        for (LuceneIndex shard : shards) {
+            shard.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public boolean isAutoCommit() {
+        return shards.get(0).isAutoCommit();
+    }
+
+    @Override
+    public void setAutoFlush(boolean autoFlush) {
+        for (LuceneIndex shard : shards) {
+            shard.setAutoFlush(autoFlush);
+        }
+    }
+
+    @Override
+    public boolean isAutoFlush() {
+        return shards.get(0).isAutoFlush();
+    }
+
+    @Override
+    public void setAnalyzer(Analyzer analyzer) {
+        for (LuceneIndex shard : shards) {
+            shard.setAnalyzer(analyzer);
+        }
+    }
+
+    @Override
+    public Analyzer getAnalyzer() {
+        return shards.get(0).getAnalyzer();
+    }
+
+    @Override
+    public boolean isEmpty() throws IOException {
+        for (LuceneIndex shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches all shards in parallel and merges their top hits
+     * @param search search
+     * @return merged results, which keep searchers of all shards until closed
+     * @throws IOException
+     */
+    @Override
+    public LuceneSearchResults search(final LuceneSearch search) throws IOException {
+        List<SingleLuceneSearchResults> shardResults = forEachShard(new ShardOperation<SingleLuceneSearchResults>() {
+            @Override
+            public SingleLuceneSearchResults apply(LuceneIndex shard) throws IOException {
+                return (SingleLuceneSearchResults) shard.search(search);
+            }
+        });
+        int numHits = (search.getNumHits() != null && search.getNumHits() > 0) ? search.getNumHits() : Integer.MAX_VALUE;
+        return new ShardedLuceneSearchResults(shardResults.toArray(new SingleLuceneSearchResults[shardResults.size()]), search.getSort(), numHits);
+    }
+
+    @Override
+    public void optimize() throws IOException {
+        forEachShard(new ShardOperation<Void>() {
+            @Override
+            public Void apply(LuceneIndex shard) throws IOException {
+                shard.optimize();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void commit() throws IOException {
+        forEachShard(new ShardOperation<Void>() {
+            @Override
+            public Void apply(LuceneIndex shard) throws IOException {
+                shard.commit();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void flush() throws IOException {
+        forEachShard(new ShardOperation<Void>() {
+            @Override
+            public Void apply(LuceneIndex shard) throws IOException {
+                shard.flush();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void clear() throws IOException {
+        for (LuceneIndex shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Runs operation on all shards in parallel. When any of them fails, results of others are closed (if closeable)
+     * and the first error is thrown.
+     */
+    private <T> List<T> forEachShard(final ShardOperation<T> operation) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (final LuceneIndex shard : shards) {
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return operation.apply(shard);
+                }
+            }));
+        }
+
+        List<T> results = new ArrayList<>(shards.size());
+        Throwable error = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (error == null) {
+                    error = new InterruptedIOException("Interrupted while waiting for shards");
+                }
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+
+        if (error != null) {
+            for (T result : results) {
+                if (result instanceof Closeable) {
+                    try {
+                        ((Closeable) result).close();
+                    } catch (IOException ignore) { }
+                }
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            throw new IOException(error);
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        IOException error = null;
+        for (LuceneIndex shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
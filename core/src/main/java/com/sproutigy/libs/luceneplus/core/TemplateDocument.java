@@ -0,0 +1,295 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.NonNull;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Document of {@link DocumentTemplate} with preallocated fields, which values are replaced in place.
+ * Fields of values not set since the last {@link #clear()} are omitted. Not thread-safe.
+ */
+public class TemplateDocument implements Iterable<IndexableField> {
+    private static final FieldType LONG_POINT = pointType(8);
+    private static final FieldType INTEGER_POINT = pointType(4);
+
+    private final DocumentTemplate template;
+    private final Slot[] slots;
+    private final List<IndexableField> fields;
+
+    /**
+     * Numeric doc values field which value is kept in a mutable number instead of a boxed one
+     */
+    private static final class ReusableDocValuesField extends Field {
+        private final MutableLong value = new MutableLong();
+
+        ReusableDocValuesField(String name) {
+            super(name, NumericDocValuesField.TYPE);
+            fieldsData = value;
+        }
+
+        void set(long value) {
+            this.value.value = value;
+        }
+    }
+
+    private static final class MutableLong extends Number {
+        private static final long serialVersionUID = 1L;
+
+        long value;
+
+        @Override
+        public int intValue() {
+            return (int) value;
+        }
+
+        @Override
+        public long longValue() {
+            return value;
+        }
+
+        @Override
+        public float floatValue() {
+            return value;
+        }
+
+        @Override
+        public double doubleValue() {
+            return value;
+        }
+    }
+
+    private static final class Slot {
+        Field indexed;
+        Field docValue;
+        Field stored;
+        byte[] point;
+        BytesRefBuilder bytes;
+        BytesRef binary;
+        boolean set;
+    }
+
+    TemplateDocument(DocumentTemplate template) {
+        this.template = template;
+        List<DocumentTemplate.Definition> definitions = template.getDefinitions();
+        slots = new Slot[definitions.size()];
+        fields = new ArrayList<>(definitions.size() * 2);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = createSlot(definitions.get(i));
+        }
+    }
+
+    private static Slot createSlot(DocumentTemplate.Definition definition) {
+        String name = definition.getName();
+        LuceneFields.FieldOptions options = definition.getOptions();
+        Slot slot = new Slot();
+        switch (definition.getType()) {
+            case KEYWORD:
+            case TEXT:
+                if (options.isIndex()) {
+                    if (definition.getType() == DocumentTemplate.Type.KEYWORD) {
+                        slot.indexed = new Field(name, "", LuceneFields.keywordType(options));
+                    } else {
+                        slot.indexed = new TextField(name, "", options.isStore() ? Field.Store.YES : Field.Store.NO);
+                    }
+                }
+                if (options.isDocValue()) {
+                    slot.bytes = new BytesRefBuilder();
+                    slot.docValue = new BinaryDocValuesField(name, slot.bytes.get());
+                }
+                if (!options.isIndex() && options.isStore()) {
+                    slot.stored = new StoredField(name, "");
+                }
+                break;
+            case BOOLEAN:
+                slot.indexed = new Field(name, LuceneFields.Boolean.FALSE, LuceneFields.keywordType(options));
+                break;
+            case LONG:
+            case INTEGER:
+            case DOUBLE:
+            case FLOAT:
+                boolean wide = definition.getType() == DocumentTemplate.Type.LONG || definition.getType() == DocumentTemplate.Type.DOUBLE;
+                if (options.isIndex()) {
+                    slot.point = new byte[wide ? 8 : 4];
+                    slot.indexed = new Field(name, new BytesRef(slot.point), wide ? LONG_POINT : INTEGER_POINT);
+                }
+                if (options.isDocValue()) {
+                    slot.docValue = new ReusableDocValuesField(name);
+                }
+                if (options.isStore()) {
+                    slot.stored = createStoredNumber(name, definition.getType());
+                }
+                break;
+            case BINARY:
+                slot.binary = new BytesRef();
+                slot.stored = new StoredField(name, slot.binary);
+                break;
+        }
+        return slot;
+    }
+
+    private static FieldType pointType(int bytes) {
+        FieldType type = new FieldType();
+        type.setDimensions(1, bytes);
+        type.freeze();
+        return type;
+    }
+
+    private static Field createStoredNumber(String name, DocumentTemplate.Type type) {
+        switch (type) {
+            case LONG: return new StoredField(name, 0L);
+            case INTEGER: return new StoredField(name, 0);
+            case DOUBLE: return new StoredField(name, 0d);
+            default: return new StoredField(name, 0f);
+        }
+    }
+
+    public DocumentTemplate getTemplate() {
+        return template;
+    }
+
+    public TemplateDocument setKeyword(String name, String value) {
+        return setString(template.slot(name, DocumentTemplate.Type.KEYWORD), value);
+    }
+
+    public TemplateDocument setText(String name, String value) {
+        return setString(template.slot(name, DocumentTemplate.Type.TEXT), value);
+    }
+
+    private TemplateDocument setString(int index, String value) {
+        Slot slot = slots[index];
+        if (value == null) {
+            slot.set = false;
+            return this;
+        }
+        if (slot.indexed != null) {
+            slot.indexed.setStringValue(value);
+        }
+        if (slot.docValue != null) {
+            slot.bytes.copyChars(value);
+            slot.docValue.setBytesValue(slot.bytes.get());
+        }
+        if (slot.stored != null) {
+            slot.stored.setStringValue(value);
+        }
+        slot.set = true;
+        return this;
+    }
+
+    public TemplateDocument setBoolean(String name, boolean value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.BOOLEAN)];
+        slot.indexed.setStringValue(value ? LuceneFields.Boolean.TRUE : LuceneFields.Boolean.FALSE);
+        slot.set = true;
+        return this;
+    }
+
+    public TemplateDocument setLong(String name, long value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.LONG)];
+        if (slot.point != null) {
+            LongPoint.encodeDimension(value, slot.point, 0);
+        }
+        if (slot.docValue != null) {
+            ((ReusableDocValuesField) slot.docValue).set(value);
+        }
+        if (slot.stored != null) {
+            slot.stored.setLongValue(value);
+        }
+        slot.set = true;
+        return this;
+    }
+
+    public TemplateDocument setInteger(String name, int value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.INTEGER)];
+        if (slot.point != null) {
+            IntPoint.encodeDimension(value, slot.point, 0);
+        }
+        if (slot.docValue != null) {
+            //same encoding as LuceneFields.Integer
+            ((ReusableDocValuesField) slot.docValue).set(Float.floatToRawIntBits(value));
+        }
+        if (slot.stored != null) {
+            slot.stored.setIntValue(value);
+        }
+        slot.set = true;
+        return this;
+    }
+
+    public TemplateDocument setDouble(String name, double value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.DOUBLE)];
+        if (slot.point != null) {
+            DoublePoint.encodeDimension(value, slot.point, 0);
+        }
+        if (slot.docValue != null) {
+            ((ReusableDocValuesField) slot.docValue).set(Double.doubleToRawLongBits(value));
+        }
+        if (slot.stored != null) {
+            slot.stored.setDoubleValue(value);
+        }
+        slot.set = true;
+        return this;
+    }
+
+    public TemplateDocument setFloat(String name, float value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.FLOAT)];
+        if (slot.point != null) {
+            FloatPoint.encodeDimension(value, slot.point, 0);
+        }
+        if (slot.docValue != null) {
+            ((ReusableDocValuesField) slot.docValue).set(Float.floatToRawIntBits(value));
+        }
+        if (slot.stored != null) {
+            slot.stored.setFloatValue(value);
+        }
+        slot.set = true;
+        return this;
+    }
+
+    /**
+     * Sets binary value without copying, so array must not be changed until document is written
+     */
+    public TemplateDocument setBinary(String name, byte[] value) {
+        Slot slot = slots[template.slot(name, DocumentTemplate.Type.BINARY)];
+        if (value == null) {
+            slot.set = false;
+            return this;
+        }
+        slot.binary.bytes = value;
+        slot.binary.offset = 0;
+        slot.binary.length = value.length;
+        slot.set = true;
+        return this;
+    }
+
+    /**
+     * Omits field until its value is set again
+     */
+    public TemplateDocument unset(@NonNull String name) {
+        slots[template.slot(name)].set = false;
+        return this;
+    }
+
+    public TemplateDocument clear() {
+        for (Slot slot : slots) {
+            slot.set = false;
+        }
+        return this;
+    }
+
+    @Override
+    public Iterator<IndexableField> iterator() {
+        fields.clear();
+        for (Slot slot : slots) {
+            if (slot.set) {
+                if (slot.indexed != null) fields.add(slot.indexed);
+                if (slot.docValue != null) fields.add(slot.docValue);
+                if (slot.stored != null) fields.add(slot.stored);
+            }
+        }
+        return fields.iterator();
+    }
+}
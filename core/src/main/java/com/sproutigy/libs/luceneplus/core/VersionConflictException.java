@@ -0,0 +1,22 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import lombok.Getter;
+
+/**
+ * Thrown when document is written or deleted with expected version different than the current one
+ */
+@Getter
+public class VersionConflictException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final long expectedVersion;
+    private final long currentVersion;
+
+    public VersionConflictException(String id, long expectedVersion, long currentVersion) {
+        super("Version conflict of document " + id + ": expected " + expectedVersion + ", current " + currentVersion);
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+}
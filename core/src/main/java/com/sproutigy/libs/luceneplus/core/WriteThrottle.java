@@ -0,0 +1,11 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import java.io.IOException;
+
+/**
+ * Called before documents are written to an index, may block writing thread until writing is allowed again.
+ * Flushes, commits and closing are not throttled, as they free memory.
+ */
+public interface WriteThrottle {
+    void await(LuceneIndex index) throws IOException;
+}
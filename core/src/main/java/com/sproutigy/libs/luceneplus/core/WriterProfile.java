@@ -0,0 +1,86 @@
+package com.sproutigy.libs.luceneplus.core;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SimpleMergedSegmentWarmer;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.util.InfoStream;
+
+/**
+ * Tuning of index writer for a kind of workload, applied over configuration provided by {@link IndexWriterConfigSupplier}.
+ * Custom merge policies and schedulers (other than default tiered and concurrent ones) are left untouched,
+ * concurrent merge scheduler is tuned in place, keeping its other settings.
+ */
+public enum WriterProfile {
+    /**
+     * Highest indexing throughput for backfills and reindexing: large RAM buffer, no compound files,
+     * wide merges on several threads. Uses more memory and file handles, freshly written documents become
+     * searchable in big, rare flushes and near-real-time reopens are expensive.
+     */
+    BULK {
+        @Override
+        public void apply(IndexWriterConfig config) {
+            config.setRAMBufferSizeMB(256);
+            config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+            config.setUseCompoundFile(false);
+            if (config.getMergePolicy() instanceof TieredMergePolicy) {
+                TieredMergePolicy mergePolicy = (TieredMergePolicy) config.getMergePolicy();
+                mergePolicy.setSegmentsPerTier(20);
+                mergePolicy.setMaxMergeAtOnce(20);
+                mergePolicy.setNoCFSRatio(0.0);
+            }
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            if (config.getMergeScheduler() instanceof ConcurrentMergeScheduler) {
+                //queued merges should not stall indexing
+                ((ConcurrentMergeScheduler) config.getMergeScheduler()).setMaxMergesAndThreads(threads + 5, threads);
+            }
+        }
+    },
+
+    /**
+     * Low latency of near-real-time search while indexing continuously: moderate RAM buffer, so flushes
+     * (and reopens) stay cheap, small segments in compound files and merged segments warmed before they become visible.
+     * Throughput is lower than bulk one as more segments are flushed and merged.
+     */
+    NRT {
+        @Override
+        public void apply(IndexWriterConfig config) {
+            config.setRAMBufferSizeMB(16);
+            config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+            config.setUseCompoundFile(true);
+            config.setReaderPooling(true);
+            config.setMergedSegmentWarmer(new SimpleMergedSegmentWarmer(InfoStream.NO_OUTPUT));
+            if (config.getMergePolicy() instanceof TieredMergePolicy) {
+                TieredMergePolicy mergePolicy = (TieredMergePolicy) config.getMergePolicy();
+                mergePolicy.setSegmentsPerTier(10);
+                mergePolicy.setMaxMergeAtOnce(10);
+                mergePolicy.setNoCFSRatio(TieredMergePolicy.DEFAULT_NO_CFS_RATIO);
+            }
+        }
+    },
+
+    /**
+     * Smallest memory and file handle footprint for many rarely written indices: small RAM buffer, compound files,
+     * no pooled segment readers and a single merge thread with limited merged segment size.
+     * Lowest throughput and more segments to search.
+     */
+    LOW_MEMORY {
+        @Override
+        public void apply(IndexWriterConfig config) {
+            config.setRAMBufferSizeMB(4);
+            config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+            config.setUseCompoundFile(true);
+            config.setReaderPooling(false);
+            if (config.getMergePolicy() instanceof TieredMergePolicy) {
+                TieredMergePolicy mergePolicy = (TieredMergePolicy) config.getMergePolicy();
+                mergePolicy.setMaxMergedSegmentMB(1024);
+                mergePolicy.setNoCFSRatio(1.0);
+            }
+            if (config.getMergeScheduler() instanceof ConcurrentMergeScheduler) {
+                ((ConcurrentMergeScheduler) config.getMergeScheduler()).setMaxMergesAndThreads(2, 1);
+            }
+        }
+    };
+
+    public abstract void apply(IndexWriterConfig config);
+}
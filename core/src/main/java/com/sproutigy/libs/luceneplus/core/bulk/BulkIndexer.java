@@ -0,0 +1,247 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.Reference;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes stream of documents in batches, each with a single writer acquisition (so refresh and commit
+ * happen once per batch), on several feeder threads. Adding documents blocks when too many batches are pending.
+ * Batches are written concurrently, so updates of the same document should not be spread across batches
+ * unless concurrency is 1. Failed batch may be partially written.
+ */
+public class BulkIndexer implements Closeable {
+    private final LuceneIndex index;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final BulkListener listener;
+
+    private final Semaphore pendingBatches;
+    private final ExecutorService executor;
+
+    private List<Operation> batch;
+    private int batchCounter = 0;
+    private boolean closed = false;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Map<Integer, Throwable> failures = new ConcurrentHashMap<>();
+
+    @RequiredArgsConstructor
+    private static final class Operation {
+        final Term term;
+        final Iterable<? extends IndexableField> doc;
+    }
+
+    public BulkIndexer(@NonNull final LuceneIndex index, @NonNull BulkOptions options) {
+        this.index = index;
+        this.batchSize = options.getBatchSize();
+        this.maxPendingBatches = options.getMaxPendingBatches();
+        this.listener = options.getListener();
+        this.pendingBatches = new Semaphore(maxPendingBatches);
+        this.batch = new ArrayList<>(batchSize);
+
+        executor = Executors.newFixedThreadPool(options.getConcurrency(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, index.toString() + "-bulk-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void addDocument(@NonNull Iterable<? extends IndexableField> doc) throws IOException {
+        add(new Operation(null, doc));
+    }
+
+    public void addDocuments(@NonNull Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+        for (Iterable<? extends IndexableField> doc : docs) {
+            add(new Operation(null, doc));
+        }
+    }
+
+    public void updateDocument(@NonNull Term term, @NonNull Iterable<? extends IndexableField> doc) throws IOException {
+        add(new Operation(term, doc));
+    }
+
+    private void add(Operation operation) throws IOException {
+        index.validate(operation.doc);
+        List<Operation> full = null;
+        int number = 0;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Bulk indexer is closed");
+            }
+            batch.add(operation);
+            if (batch.size() >= batchSize) {
+                full = batch;
+                number = ++batchCounter;
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (full != null) {
+            submit(number, full);
+        }
+    }
+
+    private void submit(final int number, final List<Operation> operations) throws IOException {
+        try {
+            pendingBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(number, operations.size(), e);
+            throw new InterruptedIOException("Interrupted while waiting for pending batches");
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(number, operations);
+                    } finally {
+                        pendingBatches.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingBatches.release();
+            failed(number, operations.size(), e);
+            throw e;
+        }
+    }
+
+    private void write(int number, List<Operation> operations) {
+        try {
+            index.awaitWriteThrottle();
+            try (Reference<IndexWriter> writer = index.provideWriter()) {
+                //consecutive additions are written at once
+                List<Iterable<? extends IndexableField>> docs = new ArrayList<>(operations.size());
+                for (Operation operation : operations) {
+                    if (operation.term == null) {
+                        docs.add(operation.doc);
+                    } else {
+                        if (!docs.isEmpty()) {
+                            writer.use().addDocuments(docs);
+                            docs.clear();
+                        }
+                        writer.use().updateDocument(operation.term, operation.doc);
+                    }
+                }
+                if (!docs.isEmpty()) {
+                    writer.use().addDocuments(docs);
+                }
+            }
+        } catch (Throwable e) {
+            failed(number, operations.size(), e);
+            return;
+        }
+
+        indexed.addAndGet(operations.size());
+        if (listener != null) {
+            listener.onBatch(number, operations.size());
+        }
+    }
+
+    private void failed(int number, int size, Throwable error) {
+        failures.put(number, error);
+        failed.addAndGet(size);
+        if (listener != null) {
+            listener.onFailed(number, size, error);
+        }
+    }
+
+    /**
+     * Submits incomplete batch and waits until all pending batches are written
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        List<Operation> partial = null;
+        int number = 0;
+        synchronized (this) {
+            if (!batch.isEmpty()) {
+                partial = batch;
+                number = ++batchCounter;
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (partial != null) {
+            submit(number, partial);
+        }
+
+        try {
+            pendingBatches.acquire(maxPendingBatches);
+            pendingBatches.release(maxPendingBatches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pending batches");
+        }
+    }
+
+    /**
+     * @return number of documents written
+     */
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    /**
+     * @return number of documents in failed batches
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return errors by number of failed batch
+     */
+    public Map<Integer, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public synchronized int getBatches() {
+        return batchCounter;
+    }
+
+    /**
+     * Writes remaining documents and stops feeder threads
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+            onClose();
+        }
+    }
+
+    protected void onClose() throws IOException {
+    }
+}
@@ -0,0 +1,6 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+public interface BulkListener {
+    void onBatch(int batch, int size);
+    void onFailed(int batch, int size, Throwable error);
+}
@@ -0,0 +1,78 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+@Data
+@AllArgsConstructor
+public class BulkOptions {
+
+    public static BulkOptions DEFAULT = BulkOptions.builder().build();
+
+    /**
+     * Number of documents written with a single writer acquisition, so refresh and commit happen once per batch
+     */
+    @Getter
+    private int batchSize;
+
+    /**
+     * Number of threads feeding writer, so its per-thread document writers are kept busy
+     */
+    @Getter
+    private int concurrency;
+
+    /**
+     * Maximum number of batches queued or being written, adding documents blocks when exceeded
+     */
+    @Getter
+    private int maxPendingBatches;
+
+    @Getter
+    private BulkListener listener;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int batchSize = 1000;
+        private int concurrency = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        private Integer maxPendingBatches;
+        private BulkListener listener;
+
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize < 1");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency < 1");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder maxPendingBatches(int maxPendingBatches) {
+            if (maxPendingBatches < 1) {
+                throw new IllegalArgumentException("maxPendingBatches < 1");
+            }
+            this.maxPendingBatches = maxPendingBatches;
+            return this;
+        }
+
+        public Builder listener(BulkListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public BulkOptions build() {
+            return new BulkOptions(batchSize, concurrency, maxPendingBatches != null ? maxPendingBatches : 2 * concurrency, listener);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+public interface OfflineBuildListener {
+    void onPhase(OfflineIndexBuilder.Phase phase, long documents);
+
+    /**
+     * Called during indexing every {@link OfflineBuildOptions#getProgressInterval()} added documents
+     */
+    void onProgress(long documents);
+}
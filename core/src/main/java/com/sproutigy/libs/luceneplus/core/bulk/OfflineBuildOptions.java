@@ -0,0 +1,112 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+
+@Data
+@AllArgsConstructor
+public class OfflineBuildOptions {
+
+    public static OfflineBuildOptions DEFAULT = OfflineBuildOptions.builder().build();
+
+    /**
+     * Number of temporary indices built in parallel, each with its own writer
+     */
+    @Getter
+    private int partitions;
+
+    /**
+     * Total RAM buffer of all partition writers, split evenly across partitions
+     */
+    @Getter
+    private double ramBufferMB;
+
+    /**
+     * Directory where temporary indices are created, null for system temporary directory
+     */
+    @Getter
+    private Path tempPath;
+
+    /**
+     * Whether target index should be force-merged into a single segment after partitions are added
+     */
+    @Getter
+    private boolean optimize;
+
+    @Getter
+    private OfflineBuildListener listener;
+
+    /**
+     * Number of added documents after which listener is notified of progress during indexing
+     */
+    @Getter
+    private long progressInterval;
+
+    /**
+     * @return RAM buffer of every partition writer
+     */
+    public double getPartitionRamBufferMB() {
+        //IndexWriter does not accept buffers of 2 GB and more
+        return Math.min(ramBufferMB / partitions, 2047);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int partitions = Runtime.getRuntime().availableProcessors();
+        private double ramBufferMB = 1024;
+        private Path tempPath;
+        private boolean optimize = false;
+        private OfflineBuildListener listener;
+        private long progressInterval = 10000;
+
+        public Builder partitions(int partitions) {
+            if (partitions < 1) {
+                throw new IllegalArgumentException("partitions < 1");
+            }
+            this.partitions = partitions;
+            return this;
+        }
+
+        public Builder ramBufferMB(double ramBufferMB) {
+            if (ramBufferMB <= 0) {
+                throw new IllegalArgumentException("ramBufferMB <= 0");
+            }
+            this.ramBufferMB = ramBufferMB;
+            return this;
+        }
+
+        public Builder tempPath(@NonNull Path tempPath) {
+            this.tempPath = tempPath;
+            return this;
+        }
+
+        public Builder optimize() {
+            this.optimize = true;
+            return this;
+        }
+
+        public Builder listener(OfflineBuildListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder progressInterval(long progressInterval) {
+            if (progressInterval < 1) {
+                throw new IllegalArgumentException("progressInterval < 1");
+            }
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        public OfflineBuildOptions build() {
+            return new OfflineBuildOptions(partitions, ramBufferMB, tempPath, optimize, listener, progressInterval);
+        }
+    }
+}
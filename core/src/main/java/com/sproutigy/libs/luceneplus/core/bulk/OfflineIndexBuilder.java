@@ -0,0 +1,325 @@
+package com.sproutigy.libs.luceneplus.core.bulk;
+
+import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.Reference;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds index from scratch by splitting documents across temporary file system indices, each with its own writer
+ * and large RAM buffer (without near-real-time readers), which are finally added to the target index at once.
+ * Temporary indices are removed when builder finishes or is closed.
+ */
+public class OfflineIndexBuilder implements Closeable {
+    /**
+     * Build phases, ABORTED build leaves no documents in target index
+     */
+    public enum Phase {
+        INDEXING, MERGING, OPTIMIZING, DONE, ABORTED
+    }
+
+    /**
+     * Numeric doc values field of built documents, identifying the build, so documents of failed build
+     * may be deleted from target index without discarding its other changes
+     */
+    public static final String BUILD_MARKER_FIELD = "luceneplus.build";
+
+    private static final AtomicLong BUILD_MARKERS = new AtomicLong(System.currentTimeMillis());
+
+    private final LuceneIndex target;
+    private final OfflineBuildOptions options;
+    private final Path tempPath;
+    private final Directory[] directories;
+    private final IndexWriter[] writers;
+    private final ExecutorService executor;
+    private final long marker = BUILD_MARKERS.incrementAndGet();
+    private final IndexableField markerField = new NumericDocValuesField(BUILD_MARKER_FIELD, marker);
+
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+    @Getter
+    private volatile Phase phase = Phase.INDEXING;
+
+    public OfflineIndexBuilder(@NonNull LuceneIndex target, @NonNull OfflineBuildOptions options) throws IOException {
+        this.target = target;
+        this.options = options;
+
+        int partitions = options.getPartitions();
+        if (options.getTempPath() != null) {
+            Files.createDirectories(options.getTempPath());
+            tempPath = Files.createTempDirectory(options.getTempPath(), "luceneplus-build");
+        } else {
+            tempPath = Files.createTempDirectory("luceneplus-build");
+        }
+
+        directories = new Directory[partitions];
+        writers = new IndexWriter[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                directories[i] = FSDirectory.open(tempPath.resolve("partition-" + i));
+                //same codec, similarity etc. as target, so added partitions match its own segments
+                IndexWriterConfig config = target.getIndexWriterConfigSupplier() != null
+                        ? target.getIndexWriterConfigSupplier().get(target.getAnalyzer())
+                        : new IndexWriterConfig(target.getAnalyzer());
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                config.setRAMBufferSizeMB(options.getPartitionRamBufferMB());
+                if (target.getIndexSort() != null) {
+                    //added indices must be sorted the same way as target
+                    config.setIndexSort(target.getIndexSort());
+                }
+                writers[i] = new IndexWriter(directories[i], config);
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+
+        executor = Executors.newFixedThreadPool(partitions, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, OfflineIndexBuilder.this.target.toString() + "-build-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Adds document to the next partition, may be called by many threads
+     * @param doc document
+     * @throws IOException
+     */
+    public void addDocument(@NonNull Iterable<? extends IndexableField> doc) throws IOException {
+        checkIndexing();
+        int partition = (nextPartition.getAndIncrement() & Integer.MAX_VALUE) % writers.length;
+        writers[partition].addDocument(marked(doc));
+        added();
+    }
+
+    /**
+     * Adds documents on partition threads, one per partition, returns when all documents are added
+     * @param docs documents
+     * @throws IOException
+     */
+    public void addDocuments(@NonNull Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+        checkIndexing();
+        final Iterator<? extends Iterable<? extends IndexableField>> iterator = docs.iterator();
+        List<Future<?>> futures = new ArrayList<>(writers.length);
+        for (final IndexWriter writer : writers) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    while (true) {
+                        Iterable<? extends IndexableField> doc;
+                        synchronized (iterator) {
+                            if (!iterator.hasNext()) {
+                                return null;
+                            }
+                            doc = iterator.next();
+                        }
+                        writer.addDocument(marked(doc));
+                        added();
+                    }
+                }
+            }));
+        }
+        await(futures);
+    }
+
+    private Iterable<IndexableField> marked(Iterable<? extends IndexableField> doc) {
+        List<IndexableField> fields = new ArrayList<>();
+        for (IndexableField field : doc) {
+            fields.add(field);
+        }
+        fields.add(markerField);
+        return fields;
+    }
+
+    private void added() {
+        long count = documents.incrementAndGet();
+        OfflineBuildListener listener = options.getListener();
+        if (listener != null && count % options.getProgressInterval() == 0) {
+            listener.onProgress(count);
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws IOException {
+        Throwable error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while adding documents");
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IOException(error);
+        }
+    }
+
+    /**
+     * @return number of documents added so far
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Closes partition writers, adds partitions to target index (optionally force-merging it), commits it
+     * and removes temporary indices.
+     * On failure documents already added to target index are deleted from it, other changes of target are kept.
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        checkIndexing();
+        boolean added = false;
+        try {
+            List<Future<?>> futures = new ArrayList<>(writers.length);
+            for (final IndexWriter writer : writers) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        writer.close();
+                        return null;
+                    }
+                }));
+            }
+            await(futures);
+
+            changePhase(Phase.MERGING);
+            try (Reference<IndexWriter> writer = target.provideWriter()) {
+                added = true;
+                writer.use().addIndexes(directories);
+                if (options.isOptimize()) {
+                    changePhase(Phase.OPTIMIZING);
+                    writer.use().forceMerge(1);
+                }
+                writer.use().commit();
+                added = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (added) {
+                discardAdded(e);
+            }
+            abort();
+            throw e;
+        }
+        try {
+            cleanup();
+        } finally {
+            changePhase(Phase.DONE);
+        }
+    }
+
+    /**
+     * Deletes documents of this build from target writer, which is shared, so it is not rolled back
+     */
+    private void discardAdded(Exception cause) {
+        try (Reference<IndexWriter> writer = target.provideWriter()) {
+            writer.use().deleteDocuments(NumericDocValuesField.newSlowExactQuery(BUILD_MARKER_FIELD, marker));
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void checkIndexing() {
+        if (phase != Phase.INDEXING) {
+            throw new IllegalStateException("Offline build is " + phase.name().toLowerCase());
+        }
+    }
+
+    private void changePhase(Phase phase) {
+        this.phase = phase;
+        OfflineBuildListener listener = options.getListener();
+        if (listener != null) {
+            listener.onPhase(phase, documents.get());
+        }
+    }
+
+    /**
+     * Discards documents not added to target index yet and removes temporary indices
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (phase != Phase.DONE && phase != Phase.ABORTED) {
+            abort();
+        }
+    }
+
+    private void abort() throws IOException {
+        if (writers != null) {
+            for (IndexWriter writer : writers) {
+                if (writer != null && writer.isOpen()) {
+                    try {
+                        writer.rollback();
+                    } catch (IOException ignore) { }
+                }
+            }
+        }
+        cleanup();
+        changePhase(Phase.ABORTED);
+    }
+
+    private void cleanup() throws IOException {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        for (Directory directory : directories) {
+            if (directory != null) {
+                directory.close();
+            }
+        }
+        deleteDirectory(tempPath);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+}
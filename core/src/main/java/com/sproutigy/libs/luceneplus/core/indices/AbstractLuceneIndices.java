@@ -1,22 +1,28 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
 import com.sproutigy.libs.luceneplus.core.*;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkIndexer;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkOptions;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
 import com.sproutigy.libs.luceneplus.core.search.MultiLuceneSearchResults;
 import lombok.*;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.store.Directory;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractLuceneIndices implements LuceneIndices {
     protected final ConcurrentHashMap<String, LuceneIndex> instantiated = new ConcurrentHashMap<>();
 
     protected final Map<String, Integer> acquisitionsCounters = new HashMap<>();
     protected Map<String, Long> lastReleaseTimestamp;
+    private final Set<String> deleteWhenReleased = new HashSet<>();
 
     @Getter @Setter
     private LuceneOpenMode openMode = LuceneOpenMode.CREATE_OR_UPDATE;
@@ -36,27 +42,92 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
     @Getter @Setter
     private IndexWriterConfigSupplier indexWriterConfigSupplier;
 
+    @Getter
+    private boolean metadataEnabled = false;
+
+    @Getter
+    private String timestampField;
+
+    @Getter
+    private Set<String> zoneMapFields = Collections.emptySet();
+
+    @Getter
+    private Sort indexSort;
+
+    @Getter
+    private LuceneSchema schema;
+
+    @Getter
+    private String idField;
+
+    private final Map<String, WriterProfile> writerProfiles = new ConcurrentHashMap<>();
+
+    protected final ConcurrentHashMap<String, LuceneIndexMetadata> closedIndicesMetadata = new ConcurrentHashMap<>();
+
+    public static final long DEFAULT_ID_FILTERS_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final IdFiltersCache closedIndicesIdFilters = new IdFiltersCache(DEFAULT_ID_FILTERS_CACHE_BYTES);
+
     @NonNull @Getter
     private AutoClosePolicy autoClosePolicy = AutoClosePolicy.DISABLED;
 
     private ScheduledExecutorService scheduler;
 
+    @NonNull @Getter
+    private IndexingMemoryPolicy indexingMemoryPolicy = IndexingMemoryPolicy.DISABLED;
+
+    @Getter
+    private IndexingMemoryController indexingMemoryController;
+
     private ExecutorService optimizationExecutor;
 
+    private final CopyOnWriteArrayList<LuceneIndexCustomizer> customizers = new CopyOnWriteArrayList<>();
+
     protected final Object lock = new Object();
 
-    protected LuceneIndex prepareIndex(String name, Supplier<Directory> directorySupplier) {
+    protected LuceneIndex prepareIndex(String name, Supplier<Directory> directorySupplier) throws IOException {
         LuceneIndex index = new LuceneIndex(name, directorySupplier, indexWriterConfigSupplier);
         index.setAnalyzer(analyzer);
         index.setAutoCommit(false);
         index.setAutoFlush(false);
         index.setOpenMode(openMode);
+        index.setMetadataEnabled(metadataEnabled);
+        index.setTimestampField(timestampField);
+        index.setZoneMapFields(zoneMapFields);
+        index.setIndexSort(indexSort);
+        index.setSchema(schema);
+        index.setIdField(idField);
+        index.setWriterProfile(getWriterProfile(name));
+        index.setWriteThrottle(indexingMemoryController);
+        for (LuceneIndexCustomizer customizer : customizers) {
+            customizer.customize(name, index);
+        }
         return index;
     }
 
     protected abstract Supplier<Directory> provideDirectorySupplier(String name) throws IOException;
     protected abstract boolean doDelete(String name) throws IOException;
 
+    /**
+     * Reads persisted metadata of index that is not opened
+     * @param name index name
+     * @return metadata or null if not available
+     * @throws IOException
+     */
+    protected LuceneIndexMetadata readMetadata(String name) throws IOException {
+        return null;
+    }
+
+    /**
+     * Reads persisted ID filters of index that is not opened
+     * @param name index name
+     * @return filters or null if not available
+     * @throws IOException
+     */
+    protected IdFilters readIdFilters(String name) throws IOException {
+        return null;
+    }
+
     @Override
     public boolean exists(String name, boolean allowCache) throws IOException {
         if (allowCache) {
@@ -101,30 +172,38 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
             throw new IllegalArgumentException("name is empty");
         }
 
-        if (getAutoCloseMillis() != null) {
-            synchronized (acquisitionsCounters) {
-                Integer counter = acquisitionsCounters.get(name);
-                if (counter == null) {
-                    acquisitionsCounters.put(name, 1);
-                } else {
-                    acquisitionsCounters.put(name, counter + 1);
-                }
+        synchronized (acquisitionsCounters) {
+            Integer counter = acquisitionsCounters.get(name);
+            if (counter == null) {
+                acquisitionsCounters.put(name, 1);
+            } else {
+                acquisitionsCounters.put(name, counter + 1);
             }
         }
 
-        return instantiate(name); //TODO: count acquisitions per index to allow automatic close
+        return instantiate(name);
     }
 
     @Override
     public void release(LuceneIndex index) throws IOException {
         AutoClosePolicy autoClosePolicy = getAutoClosePolicy();
         if (index != null) {
-            if (autoClosePolicy.isEnabled()) {
-                String name = index.getName();
-                synchronized (acquisitionsCounters) {
-                    Integer counter = acquisitionsCounters.get(name);
-                    if (counter != null) {
-                        counter--;
+            String name = index.getName();
+            boolean deleteNow = false;
+            synchronized (acquisitionsCounters) {
+                Integer counter = acquisitionsCounters.get(name);
+                if (counter != null) {
+                    counter--;
+                    if (counter == 0 && deleteWhenReleased.remove(name)) {
+                        acquisitionsCounters.remove(name);
+                        deleteNow = true;
+                    } else if (!autoClosePolicy.isEnabled()) {
+                        if (counter == 0) {
+                            acquisitionsCounters.remove(name);
+                        } else {
+                            acquisitionsCounters.put(name, counter);
+                        }
+                    } else {
                         acquisitionsCounters.put(name, counter);
                         if (counter == 0) {
                             if (autoClosePolicy.getDelayMillis() == 0) {
@@ -143,6 +222,10 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
                     }
                 }
             }
+            if (deleteNow) {
+                //writer rollback and files removal do not block acquisitions of other indices
+                delete(name);
+            }
         }
     }
 
@@ -152,6 +235,8 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
             synchronized (lock) {
                 index = instantiated.get(name);
                 if (index == null) {
+                    closedIndicesMetadata.remove(name);
+                    closedIndicesIdFilters.remove(name);
                     index = prepareIndex(name, provideDirectorySupplier(name));
                     if (isAutoOpen()) {
                         index.open();
@@ -174,15 +259,38 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
 
     @Override
     public boolean delete(String name) throws IOException {
-        try (val index = provide(name)) {
-            try (val writer = index.use().provideWriter()) {
-                writer.use().deleteAll();
-            }
+        synchronized (acquisitionsCounters) {
+            deleteWhenReleased.remove(name);
+        }
+        //pending changes are discarded instead of being deleted through the writer and committed
+        LuceneIndex index = detach(name);
+        if (index != null && index.isOpen()) {
+            index.discard();
         }
-        close(name);
+        closedIndicesMetadata.remove(name);
+        closedIndicesIdFilters.remove(name);
         return doDelete(name);
     }
 
+    @Override
+    public boolean deleteWhenReleased(String name) throws IOException {
+        synchronized (acquisitionsCounters) {
+            if (isAcquired(name)) {
+                deleteWhenReleased.add(name);
+                return false;
+            }
+        }
+        return delete(name);
+    }
+
+    @Override
+    public boolean isAcquired(String name) {
+        synchronized (acquisitionsCounters) {
+            Integer counter = acquisitionsCounters.get(name);
+            return counter != null && counter > 0;
+        }
+    }
+
     @Override
     public Collection<String> names() throws IOException {
         return names(false);
@@ -208,6 +316,28 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
         return result;
     }
 
+    @Override
+    public SortedSet<String> namesBetween(String from, String to, boolean allowCache) throws IOException {
+        TreeSet<String> names = new TreeSet<>(names(allowCache));
+        return Collections.unmodifiableSortedSet(subSet(names, from, to));
+    }
+
+    protected static NavigableSet<String> subSet(NavigableSet<String> names, String from, String to) {
+        if (from != null && to != null) {
+            if (from.compareTo(to) > 0) {
+                return new TreeSet<>();
+            }
+            return names.subSet(from, true, to, true);
+        }
+        if (from != null) {
+            return names.tailSet(from, true);
+        }
+        if (to != null) {
+            return names.headSet(to, true);
+        }
+        return names;
+    }
+
     @Override
     public void clear() throws IOException {
         while (!instantiated.isEmpty()) {
@@ -247,6 +377,9 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
     @Override
     public void optimize() throws IOException {
         for (LuceneIndex index : instantiated.values()) {
+            if (index.isReadOnly()) {
+                continue; //not writable, e.g. transitioned to warm or cold tier, which force-merges it
+            }
             if (!index.isOpen()) {
                 index.open();
                 index.optimize();
@@ -316,23 +449,10 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
                 scheduler = null;
             }
 
-            if (optimizationExecutor != null) {
-                optimizationExecutor.shutdownNow();
-                optimizationExecutor = null;
+            if (autoClosePolicy.isEnabled() && autoClosePolicy.isOptimize()) {
+                provideOptimizationExecutor();
             }
 
-            optimizationExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
-                @Override
-                public Thread newThread(Runnable r) {
-                    Thread t = new Thread(r, AbstractLuceneIndices.this.toString() + "-optimize");
-                    if (t.isDaemon())
-                        t.setDaemon(false);
-                    if (t.getPriority() != Thread.MIN_PRIORITY + 1)
-                        t.setPriority(Thread.MIN_PRIORITY + 1);
-                    return t;
-                }
-            });
-
             if (delayMillis != null && delayMillis > 0) {
                 scheduler = Executors.newScheduledThreadPool(1, new ThreadFactory() {
                     @Override
@@ -358,6 +478,20 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
         }
     }
 
+    @Override
+    public void setIndexingMemoryPolicy(@NonNull IndexingMemoryPolicy indexingMemoryPolicy) {
+        synchronized (lock) {
+            this.indexingMemoryPolicy = indexingMemoryPolicy;
+            if (indexingMemoryController != null) {
+                indexingMemoryController.close();
+            }
+            indexingMemoryController = indexingMemoryPolicy.isEnabled() ? new IndexingMemoryController(this, indexingMemoryPolicy) : null;
+            for (LuceneIndex index : instantiated.values()) {
+                index.setWriteThrottle(indexingMemoryController);
+            }
+        }
+    }
+
     private Long getAutoCloseMillis() {
         AutoClosePolicy policy = getAutoClosePolicy();
         return policy.isEnabled() ? policy.getDelayMillis() : null;
@@ -376,21 +510,201 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
 
     @Override
     public boolean isEmpty(String prefix) throws IOException {
-        LuceneIndicesIterator iterator = iterator(prefix);
-        try {
-            while (iterator.hasNext()) {
-                LuceneIndex index = iterator.next();
-                if (!index.isEmpty()) {
-                    return false;
-                }
+        for (String name : names(prefix, true)) {
+            LuceneIndex index = instantiated.get(name);
+            if (index != null && index.isOpen()) {
+                try {
+                    if (!index.isEmpty()) {
+                        return false;
+                    }
+                    continue;
+                } catch (IllegalStateException ignore) { } //closed in the meantime
+            }
+
+            LuceneIndexMetadata metadata = readMetadata(name);
+            if (metadata != null && !metadata.isEmpty()) {
+                return false;
             }
-        } finally {
-            iterator.close();
         }
 
         return true;
     }
 
+    @Override
+    public LuceneIndexMetadata metadata(String name) throws IOException {
+        LuceneIndex index = instantiated.get(name);
+        if (index != null && index.isOpen()) {
+            try {
+                return index.getMetadata();
+            } catch (IllegalStateException ignore) { } //closed in the meantime
+        }
+        return readMetadata(name);
+    }
+
+    @Override
+    public boolean mayMatch(String name, Query query) throws IOException {
+        LuceneIndex index = instantiated.get(name);
+        if (index != null && index.isOpen()) {
+            try {
+                return index.mayMatch(query);
+            } catch (IllegalStateException ignore) { } //closed in the meantime
+        }
+
+        LuceneIndexMetadata metadata = closedIndicesMetadata.get(name);
+        if (metadata == null) {
+            metadata = readMetadata(name);
+            if (metadata == null) {
+                return true;
+            }
+            if (!instantiated.containsKey(name)) {
+                closedIndicesMetadata.put(name, metadata);
+            }
+        }
+        return metadata.mayMatch(query);
+    }
+
+    @Override
+    public boolean mayContainId(String name, @NonNull String id) throws IOException {
+        LuceneIndex index = instantiated.get(name);
+        if (index != null && index.isOpen()) {
+            try {
+                return index.mayContainId(id);
+            } catch (IllegalStateException ignore) { } //closed in the meantime
+        }
+        if (idField == null) {
+            return true;
+        }
+
+        IdFilters filters = closedIndicesIdFilters.get(name);
+        if (filters == null) {
+            filters = readIdFilters(name);
+            if (filters == null) {
+                return true;
+            }
+            if (!instantiated.containsKey(name)) {
+                closedIndicesIdFilters.put(name, filters);
+            }
+        }
+        return !idField.equals(filters.getIdField()) || filters.mightContain(id);
+    }
+
+    @Override
+    public String findById(@NonNull String id) throws IOException {
+        return findById(id, new String[0]);
+    }
+
+    @Override
+    public String findById(@NonNull String id, String... names) throws IOException {
+        if (idField == null) {
+            throw new IllegalStateException("ID field is not set");
+        }
+        List<String> candidates = new ArrayList<>();
+        if (names == null || names.length == 0) {
+            candidates.addAll(names(true));
+            Collections.reverse(candidates); //the latest indices first
+        } else {
+            candidates.addAll(Arrays.asList(names));
+        }
+
+        for (String name : candidates) {
+            if (!mayContainId(name, id)) {
+                continue;
+            }
+            try (Reference<LuceneIndex> index = provide(name)) {
+                if (index.use().containsId(id)) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void setZoneMapFields(@NonNull Collection<String> zoneMapFields) {
+        this.zoneMapFields = Collections.unmodifiableSet(new TreeSet<>(zoneMapFields));
+        for (LuceneIndex index : instantiated.values()) {
+            index.setZoneMapFields(this.zoneMapFields);
+        }
+    }
+
+    public void setIndexSort(Sort indexSort) {
+        this.indexSort = indexSort;
+        for (LuceneIndex index : instantiated.values()) {
+            index.setIndexSort(indexSort);
+        }
+    }
+
+    @Override
+    public void setWriterProfile(@NonNull String namePrefix, WriterProfile writerProfile) throws IOException {
+        if (writerProfile != null) {
+            writerProfiles.put(namePrefix, writerProfile);
+        } else {
+            writerProfiles.remove(namePrefix);
+        }
+        for (LuceneIndex index : instantiated.values()) {
+            WriterProfile profile = getWriterProfile(index.getName());
+            if (index.getWriterProfile() != profile) {
+                index.setWriterProfile(profile);
+                index.reopenWriter();
+            }
+        }
+    }
+
+    @Override
+    public WriterProfile getWriterProfile(@NonNull String name) {
+        String longest = null;
+        for (String prefix : writerProfiles.keySet()) {
+            if (name.startsWith(prefix) && (longest == null || prefix.length() > longest.length())) {
+                longest = prefix;
+            }
+        }
+        return longest != null ? writerProfiles.get(longest) : null;
+    }
+
+    public void setSchema(LuceneSchema schema) {
+        this.schema = schema;
+        for (LuceneIndex index : instantiated.values()) {
+            index.setSchema(schema);
+        }
+    }
+
+    /**
+     * Limits memory used by cached ID filters of closed indices, least recently used are evicted and read again when needed
+     */
+    @Override
+    public void setIdFiltersCacheBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes < 0");
+        }
+        closedIndicesIdFilters.setMaxBytes(maxBytes);
+    }
+
+    @Override
+    public long getIdFiltersCacheBytes() {
+        return closedIndicesIdFilters.getMaxBytes();
+    }
+
+    public void setIdField(String idField) {
+        this.idField = idField;
+        for (LuceneIndex index : instantiated.values()) {
+            index.setIdField(idField);
+        }
+        closedIndicesIdFilters.clear();
+    }
+
+    public void setMetadataEnabled(boolean metadataEnabled) {
+        this.metadataEnabled = metadataEnabled;
+        for (LuceneIndex index : instantiated.values()) {
+            index.setMetadataEnabled(metadataEnabled);
+        }
+    }
+
+    public void setTimestampField(String timestampField) {
+        this.timestampField = timestampField;
+        for (LuceneIndex index : instantiated.values()) {
+            index.setTimestampField(timestampField);
+        }
+    }
+
     @SneakyThrows
     @Override
     public LuceneIndicesIterator iterator() {
@@ -405,6 +719,8 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
 
     @Override
     public void invalidate(String name) throws IOException {
+        closedIndicesMetadata.remove(name);
+        closedIndicesIdFilters.remove(name);
         if (!exists(name)) {
             try {
                 close(name);
@@ -427,24 +743,85 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
     @Override
     public void close(String name) throws IOException {
         if (name != null) {
-            LuceneIndex index;
-            if (getAutoCloseMillis() != null) {
-                synchronized (acquisitionsCounters) {
-                    index = instantiated.remove(name);
-                    acquisitionsCounters.remove(name);
-                    if (lastReleaseTimestamp != null) {
-                        lastReleaseTimestamp.remove(name);
+            closeIndex(detach(name));
+            closedIndicesMetadata.remove(name);
+            closedIndicesIdFilters.remove(name);
+        }
+    }
+
+    private LuceneIndex detach(String name) {
+        synchronized (acquisitionsCounters) {
+            acquisitionsCounters.remove(name);
+            if (lastReleaseTimestamp != null) {
+                lastReleaseTimestamp.remove(name);
+            }
+            return instantiated.remove(name);
+        }
+    }
+
+    private ExecutorService provideOptimizationExecutor() {
+        synchronized (lock) {
+            if (optimizationExecutor == null) {
+                optimizationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, AbstractLuceneIndices.this.toString() + "-optimize");
+                        if (t.isDaemon())
+                            t.setDaemon(false);
+                        if (t.getPriority() != Thread.MIN_PRIORITY + 1)
+                            t.setPriority(Thread.MIN_PRIORITY + 1);
+                        return t;
                     }
-                }
-            } else {
-                index = instantiated.remove(name);
+                });
             }
-            closeIndex(index);
+            return optimizationExecutor;
         }
     }
 
+    @Override
+    public Future<?> executeOptimization(@NonNull Runnable task) {
+        return provideOptimizationExecutor().submit(task);
+    }
+
+    @Override
+    public boolean closeIfIdle(String name) throws IOException {
+        LuceneIndex index;
+        synchronized (acquisitionsCounters) {
+            if (isAcquired(name)) {
+                return false;
+            }
+            index = detach(name);
+        }
+        //closing may wait for running merges, which should not block acquisitions of other indices
+        closeIndex(index);
+        closedIndicesMetadata.remove(name);
+        closedIndicesIdFilters.remove(name);
+        return true;
+    }
+
+    @Override
+    public void addCustomizer(@NonNull LuceneIndexCustomizer customizer) {
+        customizers.addIfAbsent(customizer);
+    }
+
+    @Override
+    public void removeCustomizer(@NonNull LuceneIndexCustomizer customizer) {
+        customizers.remove(customizer);
+    }
+
     @Override
     public void close() throws IOException {
+        synchronized (lock) {
+            if (optimizationExecutor != null) {
+                //already submitted optimizations are completed
+                optimizationExecutor.shutdown();
+                optimizationExecutor = null;
+            }
+            if (indexingMemoryController != null) {
+                indexingMemoryController.close();
+                indexingMemoryController = null;
+            }
+        }
         while (!instantiated.isEmpty()) {
             for (String name : instantiated.keySet()) {
                 try {
@@ -489,9 +866,8 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
             try {
                 instantiated.remove(index.getName());
 
-                Executor optimizationExecutor = this.optimizationExecutor;
-                if (policy.isOptimize() && optimizationExecutor != null) {
-                    optimizationExecutor.execute(new Runnable() {
+                if (policy.isOptimize()) {
+                    provideOptimizationExecutor().execute(new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -510,6 +886,77 @@ public abstract class AbstractLuceneIndices implements LuceneIndices {
         }
     }
 
+    @Override
+    public IndicesPreload preload(String prefix, PreloadOptions options) throws IOException {
+        return preload(names(prefix, true), options);
+    }
+
+    @Override
+    public IndicesPreload preload(@NonNull Collection<String> names, @NonNull PreloadOptions options) {
+        final IndicesPreload preload = new IndicesPreload(names.size(), options.getListener());
+        final boolean warm = options.isWarm();
+        final LuceneSearch warmSearch = options.getWarmSearch();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.getParallelism(), names.size())), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, AbstractLuceneIndices.this.toString() + "-preload-" + counter.incrementAndGet());
+                if (!t.isDaemon())
+                    t.setDaemon(true);
+                return t;
+            }
+        });
+
+        for (final String name : names) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (preload.isCancelled()) {
+                        preload.skipped(name);
+                        return;
+                    }
+                    try {
+                        if (!exists(name)) {
+                            //instantiating would create empty index
+                            preload.skipped(name);
+                            return;
+                        }
+                        LuceneIndex index = instantiate(name);
+                        if (!index.isOpen()) {
+                            index.open();
+                        }
+                        if (warm) {
+                            if (warmSearch != null) {
+                                index.search(warmSearch).close();
+                            } else {
+                                index.release(index.acquireSearcher());
+                            }
+                        }
+                        preload.loaded(name);
+                    } catch (Throwable e) {
+                        preload.failed(name, e);
+                    }
+                }
+            });
+        }
+
+        preload.start(executor);
+        return preload;
+    }
+
+    @Override
+    public BulkIndexer bulk(String name, @NonNull BulkOptions options) throws IOException {
+        final LuceneIndex index = acquire(name);
+        return new BulkIndexer(index, options) {
+            @Override
+            protected void onClose() throws IOException {
+                release(index);
+            }
+        };
+    }
+
     @Override
     protected void finalize() throws Throwable {
         try {
@@ -0,0 +1,159 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.index.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Adds numeric doc values field of the same value to all documents of a reader,
+ * so documents added by a compaction run may be told apart from the other ones of its target index
+ */
+final class CompactionMarkingReader extends FilterCodecReader {
+    private final FieldInfo markerInfo;
+    private final FieldInfos fieldInfos;
+    private final long marker;
+
+    CompactionMarkingReader(CodecReader in, String markerField, long marker) {
+        super(in);
+        this.marker = marker;
+
+        List<FieldInfo> infos = new ArrayList<>();
+        int number = -1;
+        int maxNumber = -1;
+        for (FieldInfo info : in.getFieldInfos()) {
+            maxNumber = Math.max(maxNumber, info.number);
+            if (info.name.equals(markerField)) {
+                number = info.number;
+            } else {
+                infos.add(info);
+            }
+        }
+        markerInfo = new FieldInfo(markerField, number >= 0 ? number : maxNumber + 1, false, true, false,
+                IndexOptions.NONE, DocValuesType.NUMERIC, -1, new HashMap<String, String>(), 0, 0);
+        infos.add(markerInfo);
+        fieldInfos = new FieldInfos(infos.toArray(new FieldInfo[infos.size()]));
+    }
+
+    @Override
+    public FieldInfos getFieldInfos() {
+        return fieldInfos;
+    }
+
+    @Override
+    public DocValuesProducer getDocValuesReader() {
+        return new MarkingDocValuesProducer(in.getDocValuesReader());
+    }
+
+    @Override
+    public CacheHelper getCoreCacheHelper() {
+        return null;
+    }
+
+    @Override
+    public CacheHelper getReaderCacheHelper() {
+        return null;
+    }
+
+    private final class MarkingDocValuesProducer extends DocValuesProducer {
+        private final DocValuesProducer in;
+
+        MarkingDocValuesProducer(DocValuesProducer in) {
+            this.in = in;
+        }
+
+        @Override
+        public NumericDocValues getNumeric(FieldInfo field) throws IOException {
+            if (field.name.equals(markerInfo.name)) {
+                return new MarkerDocValues(maxDoc());
+            }
+            return in.getNumeric(field);
+        }
+
+        @Override
+        public BinaryDocValues getBinary(FieldInfo field) throws IOException {
+            return in.getBinary(field);
+        }
+
+        @Override
+        public SortedDocValues getSorted(FieldInfo field) throws IOException {
+            return in.getSorted(field);
+        }
+
+        @Override
+        public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
+            return in.getSortedNumeric(field);
+        }
+
+        @Override
+        public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
+            return in.getSortedSet(field);
+        }
+
+        @Override
+        public void checkIntegrity() throws IOException {
+            if (in != null) {
+                in.checkIntegrity();
+            }
+        }
+
+        @Override
+        public DocValuesProducer getMergeInstance() throws IOException {
+            return in != null ? new MarkingDocValuesProducer(in.getMergeInstance()) : this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            //producer of wrapped reader is closed along with it
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return in != null ? in.ramBytesUsed() : 0;
+        }
+    }
+
+    private final class MarkerDocValues extends NumericDocValues {
+        private final int maxDoc;
+        private int doc = -1;
+
+        MarkerDocValues(int maxDoc) {
+            this.maxDoc = maxDoc;
+        }
+
+        @Override
+        public long longValue() {
+            return marker;
+        }
+
+        @Override
+        public boolean advanceExact(int target) {
+            doc = target;
+            return true;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            doc = target < maxDoc ? target : NO_MORE_DOCS;
+            return doc;
+        }
+
+        @Override
+        public long cost() {
+            return maxDoc;
+        }
+    }
+}
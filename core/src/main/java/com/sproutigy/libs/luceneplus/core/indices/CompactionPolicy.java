@@ -0,0 +1,81 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+@AllArgsConstructor
+public class CompactionPolicy {
+
+    public static CompactionPolicy DISABLED = CompactionPolicy.builder().disable().build();
+
+    @Getter
+    private boolean enabled = true;
+
+    /**
+     * Resolution of indices that finer indices are compacted into
+     */
+    @NonNull @Getter
+    private LuceneTimeSeries.Resolution targetResolution;
+
+    /**
+     * Time after the end of target time range before its indices are compacted, so late writes are not scattered
+     */
+    @Getter
+    private long delayMillis;
+
+    /**
+     * Whether compacted index should be force-merged into a single segment
+     */
+    @Getter
+    private boolean optimize;
+
+    @Getter
+    private long checkIntervalMillis;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = true;
+        private LuceneTimeSeries.Resolution targetResolution = LuceneTimeSeries.Resolution.DAY;
+        private long delayMillis = TimeUnit.HOURS.toMillis(1);
+        private boolean optimize = true;
+        private long checkIntervalMillis = TimeUnit.MINUTES.toMillis(10);
+
+        public Builder disable() {
+            enabled = false;
+            return this;
+        }
+
+        public Builder target(@NonNull LuceneTimeSeries.Resolution targetResolution) {
+            this.targetResolution = targetResolution;
+            return this;
+        }
+
+        public Builder delay(long delay, TimeUnit unit) {
+            this.delayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        public Builder optimize(boolean optimize) {
+            this.optimize = optimize;
+            return this;
+        }
+
+        public Builder checkInterval(long interval, TimeUnit unit) {
+            this.checkIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public CompactionPolicy build() {
+            return new CompactionPolicy(enabled, targetResolution, delayMillis, optimize, checkIntervalMillis);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
+import com.sproutigy.libs.luceneplus.core.IdFilters;
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.LuceneIndexMetadata;
 import com.sproutigy.libs.luceneplus.core.Supplier;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
@@ -9,18 +11,34 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.*;
 
-@EqualsAndHashCode(callSuper = false)
+import static java.nio.file.StandardWatchEventKinds.*;
+
+@EqualsAndHashCode(callSuper = false, of = "rootPath")
 public class FSLuceneIndices extends AbstractLuceneIndices {
+    /**
+     * Hidden directory inside root path, where deleted indices are moved before their files are removed.
+     * Names starting with a dot are never reported as indices.
+     */
+    public static final String TRASH_DIRECTORY_NAME = ".trash";
+
     private Path rootPath;
-    private List<String> cachedNames;
+    private volatile ConcurrentSkipListSet<String> cachedNames;
+
+    private final ConcurrentHashMap<String, CountDownLatch> pendingDeletions = new ConcurrentHashMap<>();
+    private ExecutorService deletionExecutor;
+    private boolean trashPurged = false;
+
+    private WatchService watchService;
+    private Thread watchThread;
 
     public FSLuceneIndices(@NonNull Path rootPath) {
         this.rootPath = rootPath;
@@ -32,22 +50,176 @@ public class FSLuceneIndices extends AbstractLuceneIndices {
             @SneakyThrows
             @Override
             public Directory get() {
+                awaitDeletion(name);
                 return FSDirectory.open(resolvePath(name));
             }
         };
     }
 
     @Override
-    protected boolean doDelete(String name) throws IOException {
+    public boolean delete(String name) throws IOException {
+        //hide index before it is closed and its files are removed
+        CountDownLatch pending = new CountDownLatch(1);
+        CountDownLatch previous = pendingDeletions.putIfAbsent(name, pending);
+        if (previous != null) {
+            return false;
+        }
+        ConcurrentSkipListSet<String> cachedNames = this.cachedNames;
         if (cachedNames != null) {
             cachedNames.remove(name);
         }
-        return deleteDirectoryIfExists(resolvePath(name));
+
+        try {
+            return super.delete(name);
+        } catch (IOException | RuntimeException e) {
+            deleted(name, pending);
+            throw e;
+        }
+    }
+
+    @Override
+    protected boolean doDelete(final String name) throws IOException {
+        CountDownLatch pending = pendingDeletions.get(name);
+        final Path path = resolvePath(name);
+        if (!Files.exists(path)) {
+            deleted(name, pending);
+            return false;
+        }
+
+        Path trashPath = moveToTrash(path);
+        if (trashPath != null) {
+            deleted(name, pending);
+            deleteAsync(trashPath, null, null);
+        } else {
+            //directory could not be moved (e.g. files are still locked), so it stays hidden until removed
+            deleteAsync(path, name, pending);
+        }
+        return true;
+    }
+
+    private Path moveToTrash(Path path) {
+        try {
+            Path trashPath = rootPath.resolve(TRASH_DIRECTORY_NAME);
+            Files.createDirectories(trashPath);
+            Path target = trashPath.resolve(path.getFileName().toString() + "." + System.nanoTime());
+            return Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private void deleteAsync(final Path path, final String name, final CountDownLatch pending) {
+        provideDeletionExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteDirectoryIfExists(path);
+                } catch (IOException ignore) {
+                    //files left in trash are removed on the next purge
+                } finally {
+                    if (name != null) {
+                        deleted(name, pending);
+                    }
+                }
+            }
+        });
+    }
+
+    private void deleted(String name, CountDownLatch pending) {
+        if (pending != null) {
+            pendingDeletions.remove(name, pending);
+            pending.countDown();
+        }
+    }
+
+    private ExecutorService provideDeletionExecutor() {
+        synchronized (lock) {
+            if (deletionExecutor == null) {
+                deletionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, FSLuceneIndices.this.toString() + "-delete");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+            }
+            return deletionExecutor;
+        }
+    }
+
+    /**
+     * Removes leftovers of deletions interrupted by previous process shutdown.
+     * Only entries present when purge starts are removed, as concurrent deletions keep moving directories into trash.
+     */
+    private void purgeTrash() {
+        synchronized (lock) {
+            if (trashPurged) {
+                return;
+            }
+            trashPurged = true;
+        }
+        Path trashPath = rootPath.resolve(TRASH_DIRECTORY_NAME);
+        if (Files.isDirectory(trashPath)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(trashPath)) {
+                for (Path entry : entries) {
+                    deleteAsync(entry, null, null);
+                }
+            } catch (IOException | DirectoryIteratorException ignore) {
+                //trash removed concurrently, or files left in it are removed on the next purge
+            }
+        }
+    }
+
+    /**
+     * Blocks until pending deletion of a given index has removed its directory.
+     */
+    public void awaitDeletion(String name) throws InterruptedIOException {
+        CountDownLatch pending = pendingDeletions.get(name);
+        if (pending != null) {
+            try {
+                pending.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for deletion of index: " + name);
+            }
+        }
+    }
+
+    public boolean isDeleting(String name) {
+        return pendingDeletions.containsKey(name);
+    }
+
+    @Override
+    protected LuceneIndexMetadata readMetadata(String name) throws IOException {
+        Path path = resolvePath(name);
+        if (!Files.isDirectory(path)) {
+            return null;
+        }
+        try (Directory directory = FSDirectory.open(path)) {
+            return LuceneIndexMetadata.read(directory);
+        }
+    }
+
+    @Override
+    protected IdFilters readIdFilters(String name) throws IOException {
+        Path path = resolvePath(name);
+        if (!Files.isDirectory(path)) {
+            return null;
+        }
+        try (Directory directory = FSDirectory.open(path)) {
+            return IdFilters.read(directory);
+        }
     }
 
     @Override
     public boolean exists(String name, boolean allowCache) throws IOException {
+        if (!isIndexName(name) || isDeleting(name)) {
+            return false;
+        }
         if (allowCache) {
+            ConcurrentSkipListSet<String> cachedNames = this.cachedNames;
             if (cachedNames != null && cachedNames.contains(name)) {
                 return true;
             }
@@ -58,19 +230,19 @@ public class FSLuceneIndices extends AbstractLuceneIndices {
 
     @Override
     protected void onInstantiate(LuceneIndex index, String name) throws IOException {
+        ConcurrentSkipListSet<String> cachedNames = this.cachedNames;
         if (cachedNames == null) {
-            names(); //fill cache
+            cachedNames = scanNames(); //fill cache
         }
         if (cachedNames != null) {
-            if (!cachedNames.contains(name)) {
-                cachedNames.add(name);
-            }
+            cachedNames.add(name);
         }
     }
 
     @Override
     public void invalidate(String name) throws IOException {
-        if (cachedNames != null) {
+        ConcurrentSkipListSet<String> cachedNames = this.cachedNames;
+        if (cachedNames != null && !isWatching()) {
             cachedNames.remove(name);
         }
         super.invalidate(name);
@@ -78,33 +250,170 @@ public class FSLuceneIndices extends AbstractLuceneIndices {
 
     @Override
     public void invalidate() throws IOException {
-        cachedNames = null;
+        if (!isWatching()) {
+            cachedNames = null;
+        }
         super.invalidate();
     }
 
     @Override
     public Collection<String> names(boolean allowCache) throws IOException {
-        if (!allowCache || cachedNames == null) {
-            try {
-                List<String> names = new LinkedList<>();
-                try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(rootPath)) {
-                    for (Path path : directoryStream) {
-                        names.add(path.getFileName().toString());
+        ConcurrentSkipListSet<String> names = provideNames(allowCache);
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSortedSet(names);
+    }
+
+    @Override
+    public Collection<String> names(String prefix, boolean allowCache) throws IOException {
+        if (prefix == null || prefix.isEmpty()) {
+            return names(allowCache);
+        }
+
+        ConcurrentSkipListSet<String> names = provideNames(allowCache);
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSortedSet(names.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    @Override
+    public SortedSet<String> namesBetween(String from, String to, boolean allowCache) throws IOException {
+        ConcurrentSkipListSet<String> names = provideNames(allowCache);
+        if (names == null) {
+            return Collections.unmodifiableSortedSet(new TreeSet<String>());
+        }
+        return Collections.unmodifiableSortedSet(subSet(names, from, to));
+    }
+
+    private ConcurrentSkipListSet<String> provideNames(boolean allowCache) throws IOException {
+        ConcurrentSkipListSet<String> names = this.cachedNames;
+        if (!allowCache || names == null) {
+            names = scanNames();
+        }
+        return names;
+    }
+
+    private ConcurrentSkipListSet<String> scanNames() throws IOException {
+        try {
+            ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(rootPath)) {
+                for (Path path : directoryStream) {
+                    String name = path.getFileName().toString();
+                    if (isIndexName(name) && !isDeleting(name)) {
+                        names.add(name);
                     }
                 }
-                cachedNames = new CopyOnWriteArrayList<>(names);
-            } catch (NoSuchFileException noSuchFile) {
-                return Collections.emptySet();
             }
+            purgeTrash();
+            cachedNames = names;
+            return names;
+        } catch (NoSuchFileException noSuchFile) {
+            return null;
         }
+    }
 
-        return cachedNames;
+    /**
+     * Keeps cached names in sync with root directory by watching file system changes,
+     * so names cache does not have to be rescanned after invalidation.
+     * @param watch whether root directory should be watched
+     * @throws IOException
+     */
+    public void setWatching(boolean watch) throws IOException {
+        synchronized (lock) {
+            if (watch == isWatching()) {
+                return;
+            }
+
+            if (watch) {
+                Files.createDirectories(rootPath);
+                watchService = rootPath.getFileSystem().newWatchService();
+                rootPath.register(watchService, ENTRY_CREATE, ENTRY_DELETE, OVERFLOW);
+                scanNames();
+
+                final WatchService service = watchService;
+                watchThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        watch(service);
+                    }
+                }, toString() + "-watch");
+                watchThread.setDaemon(true);
+                watchThread.start();
+            } else {
+                stopWatching();
+            }
+        }
+    }
+
+    public boolean isWatching() {
+        return watchService != null;
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    ConcurrentSkipListSet<String> cachedNames = this.cachedNames;
+                    if (event.kind() == OVERFLOW || cachedNames == null) {
+                        this.cachedNames = null;
+                        continue;
+                    }
+
+                    String name = ((Path) event.context()).getFileName().toString();
+                    if (!isIndexName(name)) {
+                        continue;
+                    }
+                    if (event.kind() == ENTRY_CREATE) {
+                        cachedNames.add(name);
+                    } else if (event.kind() == ENTRY_DELETE) {
+                        cachedNames.remove(name);
+                    }
+                }
+                if (!key.reset()) {
+                    //root directory is no longer accessible
+                    cachedNames = null;
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignore) {
+        }
+    }
+
+    private void stopWatching() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+    }
+
+    private static boolean isIndexName(String name) {
+        return !name.startsWith(".");
     }
 
     public Path resolvePath(String name) {
         return rootPath.resolve(name);
     }
 
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            stopWatching();
+            if (deletionExecutor != null) {
+                //already submitted deletions are completed in background
+                deletionExecutor.shutdown();
+                deletionExecutor = null;
+            }
+        }
+        super.close();
+    }
+
     @Override
     public String toString() {
         return rootPath.toString();
@@ -117,13 +426,24 @@ public class FSLuceneIndices extends AbstractLuceneIndices {
             Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Files.delete(file);
+                    Files.deleteIfExists(file);
                     return FileVisitResult.CONTINUE;
                 }
 
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (exc instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE; //concurrently removed
+                    }
+                    throw exc;
+                }
+
                 @Override
                 public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    Files.delete(dir);
+                    if (exc != null && !(exc instanceof NoSuchFileException)) {
+                        throw exc;
+                    }
+                    Files.deleteIfExists(dir);
                     return FileVisitResult.CONTINUE;
                 }
             });
@@ -0,0 +1,64 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import com.sproutigy.libs.luceneplus.core.IdFilters;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ID filters of closed indices, least recently used evicted when total size exceeds the limit
+ */
+final class IdFiltersCache {
+    private final LinkedHashMap<String, IdFilters> filters = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes = 0;
+
+    IdFiltersCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized IdFilters get(String name) {
+        return filters.get(name);
+    }
+
+    synchronized void put(String name, IdFilters idFilters) {
+        remove(name);
+        filters.put(name, idFilters);
+        bytes += idFilters.ramBytesUsed();
+        evict();
+    }
+
+    synchronized void remove(String name) {
+        IdFilters removed = filters.remove(name);
+        if (removed != null) {
+            bytes -= removed.ramBytesUsed();
+        }
+    }
+
+    synchronized void clear() {
+        filters.clear();
+        bytes = 0;
+    }
+
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, IdFilters>> iterator = filters.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().ramBytesUsed();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.WriteThrottle;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps RAM used by writers of all opened indices within {@link IndexingMemoryPolicy}.
+ * Checks periodically, so short peaks above the budget are possible.
+ */
+public class IndexingMemoryController implements WriteThrottle, Closeable {
+    private final AbstractLuceneIndices indices;
+
+    @Getter
+    private final IndexingMemoryPolicy policy;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Object throttleMonitor = new Object();
+
+    @Getter
+    private volatile boolean throttled = false;
+
+    private volatile boolean closed = false;
+
+    @Getter
+    private volatile long ramBytesUsed = 0;
+
+    private final AtomicLong flushes = new AtomicLong();
+
+    IndexingMemoryController(AbstractLuceneIndices indices, IndexingMemoryPolicy policy) {
+        this.indices = indices;
+        this.policy = policy;
+
+        scheduler = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, IndexingMemoryController.this.indices.toString() + "-indexingMemory");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (Throwable ignore) { } //ensure that this will be called in the future
+            }
+        }, policy.getCheckIntervalMillis(), policy.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes the biggest writer buffers until total is within budget and updates throttling state
+     * @throws IOException
+     */
+    public synchronized void check() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        List<LuceneIndex> opened = new ArrayList<>();
+        final Map<LuceneIndex, Long> used = new IdentityHashMap<>();
+        long total = 0;
+        for (LuceneIndex index : indices.instantiated.values()) {
+            long bytes = index.ramBytesUsed();
+            if (bytes > 0) {
+                opened.add(index);
+                used.put(index, bytes);
+                total += bytes;
+            }
+        }
+
+        if (total > policy.getMaxBytes()) {
+            Collections.sort(opened, new Comparator<LuceneIndex>() {
+                @Override
+                public int compare(LuceneIndex o1, LuceneIndex o2) {
+                    return Long.compare(used.get(o2), used.get(o1));
+                }
+            });
+
+            for (LuceneIndex index : opened) {
+                if (total <= policy.getMaxBytes()) {
+                    break;
+                }
+                if (index.flushBuffer()) {
+                    flushes.incrementAndGet();
+                }
+                //writing continues while flushing, so actual usage is measured again
+                total += index.ramBytesUsed() - used.get(index);
+            }
+        }
+
+        ramBytesUsed = total;
+        setThrottled(total > policy.getThrottleBytes());
+    }
+
+    private void setThrottled(boolean throttled) {
+        synchronized (throttleMonitor) {
+            this.throttled = throttled;
+            if (!throttled) {
+                throttleMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of writer buffers flushed because of exceeded budget
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @Override
+    public void await(LuceneIndex index) throws IOException {
+        if (!throttled) {
+            return;
+        }
+        synchronized (throttleMonitor) {
+            while (throttled && !closed) {
+                try {
+                    throttleMonitor.wait(policy.getCheckIntervalMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttled");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        setThrottled(false);
+    }
+}
@@ -0,0 +1,92 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budget of RAM used by buffered documents and deletions of all writers of indices.
+ * When exceeded, the biggest buffers are flushed to new segments. When still above throttle limit,
+ * writer acquisitions are blocked until flushing catches up.
+ */
+@Data
+@AllArgsConstructor
+public class IndexingMemoryPolicy {
+
+    public static IndexingMemoryPolicy DISABLED = IndexingMemoryPolicy.builder().disable().build();
+
+    @Getter
+    private boolean enabled = true;
+
+    @Getter
+    private long maxBytes;
+
+    @Getter
+    private long throttleBytes;
+
+    @Getter
+    private long checkIntervalMillis;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = true;
+        private long maxBytes = 256L * 1024 * 1024;
+        private Long throttleBytes = null;
+        private long checkIntervalMillis = 1000;
+
+        public Builder disable() {
+            enabled = false;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder maxMB(double maxMB) {
+            this.maxBytes = (long) (maxMB * 1024 * 1024);
+            return this;
+        }
+
+        /**
+         * Defaults to 1.5 of max bytes
+         */
+        public Builder throttleBytes(long throttleBytes) {
+            this.throttleBytes = throttleBytes;
+            return this;
+        }
+
+        public Builder checkIntervalMillis(long checkIntervalMillis) {
+            this.checkIntervalMillis = checkIntervalMillis;
+            return this;
+        }
+
+        public Builder checkInterval(long checkInterval, TimeUnit unit) {
+            this.checkIntervalMillis = unit.toMillis(checkInterval);
+            return this;
+        }
+
+        public IndexingMemoryPolicy build() {
+            if (enabled) {
+                if (maxBytes <= 0) {
+                    throw new IllegalArgumentException("maxBytes <= 0");
+                }
+                if (throttleBytes != null && throttleBytes < maxBytes) {
+                    throw new IllegalArgumentException("throttleBytes < maxBytes");
+                }
+                if (checkIntervalMillis <= 0) {
+                    throw new IllegalArgumentException("checkInterval <= 0");
+                }
+            }
+            long throttle = throttleBytes != null ? throttleBytes : maxBytes + maxBytes / 2;
+            return new IndexingMemoryPolicy(enabled, maxBytes, throttle, checkIntervalMillis);
+        }
+    }
+}
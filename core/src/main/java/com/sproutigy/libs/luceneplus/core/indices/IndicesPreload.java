@@ -0,0 +1,143 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of indices preloading started by {@link LuceneIndices#preload}.
+ * May be polled (e.g. by readiness checks) or awaited.
+ */
+public class IndicesPreload {
+    @Getter
+    private final int total;
+
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+    private final CountDownLatch latch;
+    private final PreloadListener listener;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * Whether preload has been cancelled, so it is not successful even if no index failed
+     */
+    @Getter
+    private volatile boolean cancelled = false;
+
+    IndicesPreload(int total, PreloadListener listener) {
+        this.total = total;
+        this.listener = listener;
+        this.latch = new CountDownLatch(total);
+    }
+
+    void start(ExecutorService executor) {
+        this.executor = executor;
+        if (isDone()) {
+            executor.shutdown();
+        }
+    }
+
+    void loaded(String name) {
+        int done = loaded.incrementAndGet() + failed.get();
+        try {
+            if (listener != null) {
+                listener.onLoaded(name, done, total);
+            }
+        } finally {
+            finishOne();
+        }
+    }
+
+    void failed(String name, Throwable error) {
+        failures.put(name, error);
+        int done = failed.incrementAndGet() + loaded.get();
+        try {
+            if (listener != null) {
+                listener.onFailed(name, error, done, total);
+            }
+        } finally {
+            finishOne();
+        }
+    }
+
+    /**
+     * Index not opened, as it does not exist or preload has been cancelled
+     */
+    void skipped(String name) {
+        skipped.incrementAndGet();
+        finishOne();
+    }
+
+    private void finishOne() {
+        latch.countDown();
+        if (isDone()) {
+            ExecutorService executor = this.executor;
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of indices not opened, as they do not exist or preload has been cancelled
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public double getProgress() {
+        if (total == 0) {
+            return 1.0;
+        }
+        return (double)(loaded.get() + failed.get() + skipped.get()) / total;
+    }
+
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    public boolean isSuccessful() {
+        return isDone() && !cancelled && failed.get() == 0;
+    }
+
+    public void await() throws InterruptedException {
+        latch.await();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return latch.await(timeout, unit);
+    }
+
+    /**
+     * Stops opening indices that have not been started yet. Indices being opened are not interrupted
+     * (interrupted file system I/O could close their channels), preload is done when they finish.
+     */
+    public void cancel() {
+        cancelled = true;
+        ExecutorService executor = this.executor;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+
+import java.io.IOException;
+
+/**
+ * Adjusts settings of index (e.g. open mode or writer configuration) when it is instantiated, before it is opened
+ */
+public interface LuceneIndexCustomizer {
+    void customize(String name, LuceneIndex index) throws IOException;
+}
@@ -1,12 +1,19 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
 import com.sproutigy.libs.luceneplus.core.*;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkIndexer;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkOptions;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Future;
 
 public interface LuceneIndices extends Iterable<LuceneIndex>, LuceneIndexOperations, Closeable {
     void setIndexWriterConfigSupplier(IndexWriterConfigSupplier indexWriterConfigSupplier);
@@ -20,8 +27,91 @@ public interface LuceneIndices extends Iterable<LuceneIndex>, LuceneIndexOperati
     AutoClosePolicy getAutoClosePolicy();
     void setAutoClosePolicy(AutoClosePolicy autoClosePolicy);
 
+    IndexingMemoryPolicy getIndexingMemoryPolicy();
+    void setIndexingMemoryPolicy(IndexingMemoryPolicy indexingMemoryPolicy);
+
     boolean isEmpty(String prefix) throws IOException;
 
+    /**
+     * Provides metadata of the latest commit of index, without opening its writer or reader
+     * @param name index name
+     * @return metadata or null if index does not exist or nothing has been committed yet
+     * @throws IOException
+     */
+    LuceneIndexMetadata metadata(String name) throws IOException;
+
+    /**
+     * Checks whether index may contain documents matching required range clauses of the query,
+     * basing on timestamp bounds and zone maps kept in metadata
+     * @param name index name
+     * @param query query to check
+     * @return false only if index surely does not contain any matching document
+     * @throws IOException
+     */
+    boolean mayMatch(String name, Query query) throws IOException;
+
+    /**
+     * Checks whether index may contain document with a given ID, basing on ID filters kept beside metadata
+     * @param name index name
+     * @param id document ID
+     * @return false only if index surely does not contain such document
+     * @throws IOException
+     */
+    boolean mayContainId(String name, String id) throws IOException;
+
+    /**
+     * Finds index containing document with a given ID, opening only indices which ID filters may contain it
+     * @param id document ID
+     * @return name of the latest index containing document or null if not found
+     * @throws IOException
+     */
+    String findById(String id) throws IOException;
+
+    String findById(String id, String... names) throws IOException;
+
+    /**
+     * Sets name of keyword field with unique document ID, which values are kept in ID filters
+     * of indices with metadata enabled, see {@link LuceneIndex#setIdField(String)}
+     */
+    void setIdField(String idField);
+    String getIdField();
+
+    void setIdFiltersCacheBytes(long maxBytes);
+    long getIdFiltersCacheBytes();
+
+    void setZoneMapFields(Collection<String> zoneMapFields);
+    Set<String> getZoneMapFields();
+
+    void setMetadataEnabled(boolean metadataEnabled);
+    boolean isMetadataEnabled();
+
+    void setTimestampField(String timestampField);
+    String getTimestampField();
+
+    /**
+     * Sets order of documents inside segments of indices, applied to writers opened after the change
+     * @param indexSort index sort or null for unsorted indices
+     */
+    void setIndexSort(Sort indexSort);
+    Sort getIndexSort();
+
+    /**
+     * Sets schema which documents written through indices are validated against
+     * @param schema schema or null to disable validation
+     */
+    void setSchema(LuceneSchema schema);
+    LuceneSchema getSchema();
+
+    /**
+     * Sets writer profile of indices which names start with a given prefix (the longest matching prefix wins),
+     * writers of opened indices are reopened when not used
+     * @param namePrefix name prefix, empty for all indices
+     * @param writerProfile writer profile or null to remove it
+     * @throws IOException
+     */
+    void setWriterProfile(String namePrefix, WriterProfile writerProfile) throws IOException;
+    WriterProfile getWriterProfile(String name);
+
     boolean exists(String name) throws IOException;
     boolean exists(String name, boolean allowCache) throws IOException;
 
@@ -34,6 +124,16 @@ public interface LuceneIndices extends Iterable<LuceneIndex>, LuceneIndexOperati
     Collection<String> names(String prefix) throws IOException;
     Collection<String> names(String prefix, boolean allowCache) throws IOException;
 
+    /**
+     * Provides sorted names within range
+     * @param from lowest name (inclusive), null for unbounded
+     * @param to highest name (inclusive), null for unbounded
+     * @param allowCache whether cached names may be used
+     * @return sorted names
+     * @throws IOException
+     */
+    SortedSet<String> namesBetween(String from, String to, boolean allowCache) throws IOException;
+
     LuceneSearchResults search(LuceneSearch search, String... names) throws IOException;
 
     boolean isOpen(String name);
@@ -42,9 +142,46 @@ public interface LuceneIndices extends Iterable<LuceneIndex>, LuceneIndexOperati
     CloseableIterator<LuceneIndex> iterator();
     CloseableIterator<LuceneIndex> iterator(String prefix) throws IOException;
 
+    /**
+     * Opens (and optionally warms) selected indices in background with bounded concurrency.
+     * Indices opened this way are not acquired, so they are subject of auto-close policy only after first use.
+     */
+    IndicesPreload preload(Collection<String> names, PreloadOptions options) throws IOException;
+    IndicesPreload preload(String prefix, PreloadOptions options) throws IOException;
+
+    /**
+     * Starts bulk ingest into index, which is kept acquired until bulk indexer is closed
+     * @param name index name
+     * @param options batching options
+     * @return bulk indexer which must be closed to write remaining documents
+     * @throws IOException
+     */
+    BulkIndexer bulk(String name, BulkOptions options) throws IOException;
+
     void invalidate(String name) throws IOException;
     void invalidate() throws IOException;
 
+    /**
+     * Closes index unless it is acquired
+     * @return false if index is acquired
+     */
+    boolean closeIfIdle(String name) throws IOException;
+
+    /**
+     * Runs maintenance task (e.g. merge) on background optimization thread, one task at a time
+     */
+    Future<?> executeOptimization(Runnable task);
+
+    void addCustomizer(LuceneIndexCustomizer customizer);
+    void removeCustomizer(LuceneIndexCustomizer customizer);
+
     boolean delete(String name) throws IOException;
+
+    /**
+     * Deletes index as soon as all its acquisitions are released, so in-flight searches are not affected
+     * @return true if index has been deleted immediately
+     */
+    boolean deleteWhenReleased(String name) throws IOException;
+    boolean isAcquired(String name);
     void close(String name) throws IOException;
 }
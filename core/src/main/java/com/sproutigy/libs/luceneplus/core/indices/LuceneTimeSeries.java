@@ -1,22 +1,31 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
+import com.sproutigy.libs.luceneplus.core.IndexWriterConfigSupplier;
+import com.sproutigy.libs.luceneplus.core.LiveCommitData;
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.LuceneIndexMetadata;
+import com.sproutigy.libs.luceneplus.core.LuceneOpenMode;
 import com.sproutigy.libs.luceneplus.core.Reference;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
+import com.sproutigy.libs.luceneplus.core.search.MultiLuceneSearchResults;
 import lombok.*;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene70.Lucene70Codec;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RequiredArgsConstructor
-public class LuceneTimeSeries {
-    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMddHHmmss");
-    static {
-        DATE_FORMAT.setTimeZone(UTC);
-    }
-
+public class LuceneTimeSeries implements Closeable {
     public enum Resolution {
         SECOND(1000L, 14),
         MINUTE(60 * 1000L, 12),
@@ -33,8 +42,49 @@ public class LuceneTimeSeries {
         private long durationMilliseconds;
 
         int substringLength;
+
+        static Resolution ofLength(int substringLength) {
+            for (Resolution resolution : values()) {
+                if (resolution.substringLength == substringLength) {
+                    return resolution;
+                }
+            }
+            return null;
+        }
     }
 
+    public enum Tier {
+        /**
+         * Current index, written with open writer
+         */
+        HOT,
+        /**
+         * Recent index, merged into a single segment and opened read-only
+         */
+        WARM,
+        /**
+         * Old index, with recompressed stored fields, opened read-only and closed when idle
+         */
+        COLD
+    }
+
+    /**
+     * Commit user data key of the tier index has been transitioned to
+     */
+    public static final String TIER_KEY = "luceneplus.tier";
+
+    /**
+     * Commit user data key of compacted index, listing names of source indices merged into it
+     */
+    public static final String COMPACTED_SOURCES_KEY = "luceneplus.compactedSources";
+
+    /**
+     * Numeric doc values field of documents added to compacted index, identifying the compaction run
+     */
+    public static final String COMPACTION_MARKER_FIELD = "luceneplus.compaction";
+
+    private static final AtomicLong COMPACTION_MARKERS = new AtomicLong(System.currentTimeMillis());
+
     @Data
     @AllArgsConstructor
     public static class TimeRange {
@@ -57,15 +107,164 @@ public class LuceneTimeSeries {
     }
 
 
+    @Data
+    @AllArgsConstructor
+    public static class TimestampedDocument {
+        private long timestamp;
+
+        @NonNull
+        private Iterable<? extends IndexableField> document;
+    }
+
+
     @NonNull
     private LuceneIndices luceneIndices;
 
     @NonNull @Getter
     private String prefix;
 
-    @NonNull @Getter @Setter
+    @NonNull @Getter
     private Resolution resolution = Resolution.DAY;
 
+    /**
+     * Name of the most recently written bucket, written by many threads
+     */
+    private volatile CachedName cachedName;
+
+    @RequiredArgsConstructor
+    private static final class CachedName {
+        final long start;
+        final long end;
+        final String name;
+    }
+
+    /**
+     * Maximum number of indices kept acquired (with their writers opened) for routed writes.
+     * Least recently written ones are released first, so late events for recent buckets do not reopen indices.
+     */
+    @Getter
+    private int maxPinnedIndices = 4;
+
+    private final LinkedHashMap<String, PinnedIndex> pinned = new LinkedHashMap<>(16, 0.75f, true);
+
+    @NonNull @Getter
+    private RetentionPolicy retentionPolicy = RetentionPolicy.DISABLED;
+
+    @NonNull @Getter
+    private CompactionPolicy compactionPolicy = CompactionPolicy.DISABLED;
+
+    @NonNull @Getter
+    private RolloverPolicy rolloverPolicy = RolloverPolicy.DISABLED;
+
+    @NonNull @Getter
+    private TieringPolicy tieringPolicy = TieringPolicy.DISABLED;
+
+    @Getter
+    private TimeSeriesMergePolicy mergePolicy;
+
+    private ScheduledFuture<?> tieringTask;
+
+    /**
+     * Indices of old tiers reopened for writing (e.g. by late writes) until transitioned again, guarded by pinned lock
+     */
+    private final Set<String> writable = new HashSet<>();
+
+    /**
+     * Tier transitions in progress, guarded by pinned lock
+     */
+    private final Map<String, Tier> transitioning = new HashMap<>();
+
+    private final LuceneIndexCustomizer customizer = new LuceneIndexCustomizer() {
+        @Override
+        public void customize(String name, LuceneIndex index) throws IOException {
+            if (!name.startsWith(prefix) || resolutionOf(name) == null) {
+                return;
+            }
+            customizeMerges(index);
+            customizeTier(name, index);
+        }
+    };
+
+    /**
+     * The newest index in rollover mode, guarded by pinned lock
+     */
+    private Rollover rollover;
+
+    /**
+     * Start times of rollover indices by name, guarded by pinned lock, so lookups do not list indices per call.
+     * Rebuilt when catalog changes or indices are dropped by retention.
+     */
+    private TreeMap<String, Long> rolloverStarts;
+    private Catalog rolloverStartsCatalog;
+
+    private static final long SIZE_CHECK_INTERVAL_MILLIS = 1000;
+
+    @RequiredArgsConstructor
+    private static final class Rollover {
+        final String name;
+        final long start;
+        long maxTimestamp;
+        long lastSizeCheck;
+        boolean due;
+    }
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> retentionTask;
+    private ScheduledFuture<?> compactionTask;
+
+    /**
+     * Compaction state, replaced as a whole (under pinned lock) so lookups see the swap atomically
+     */
+    private volatile Catalog catalog = Catalog.EMPTY;
+
+    private final Object compactionLock = new Object();
+
+    @RequiredArgsConstructor
+    private static final class Catalog {
+        static final Catalog EMPTY = new Catalog(Collections.<String>emptySet(), Collections.<String, String>emptyMap());
+
+        /**
+         * Names excluded from lookups: compacted indices being built and sources already superseded by them
+         */
+        final Set<String> hidden;
+
+        /**
+         * Writes to sources of compaction go to compacted index
+         */
+        final Map<String, String> redirects;
+
+        String redirect(String name) {
+            String target;
+            while ((target = redirects.get(name)) != null) {
+                name = target;
+            }
+            return name;
+        }
+
+        Catalog change(Collection<String> hide, Collection<String> show, Collection<String> sources, String target) {
+            Set<String> hidden = new HashSet<>(this.hidden);
+            hidden.removeAll(show);
+            hidden.addAll(hide);
+            Map<String, String> redirects = new HashMap<>(this.redirects);
+            for (String source : sources) {
+                if (target != null) {
+                    redirects.put(source, target);
+                } else {
+                    redirects.remove(source);
+                }
+            }
+            return new Catalog(hidden, redirects);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class PinnedIndex {
+        final LuceneIndex index;
+        int users = 0;
+        boolean evicted = false;
+        boolean stale = false;
+    }
+
 
     public LuceneTimeSeries(LuceneIndices luceneIndices) {
         this(luceneIndices, "");
@@ -76,16 +275,971 @@ public class LuceneTimeSeries {
         setResolution(resolution);
     }
 
-    public String indexName(long time) {
-        synchronized (DATE_FORMAT) {
-            return prefix + DATE_FORMAT.format(new Date(time)).substring(0, resolution.substringLength);
+    public void setResolution(@NonNull Resolution resolution) {
+        this.resolution = resolution;
+        this.cachedName = null;
+    }
+
+    public String indexName(long time) throws IOException {
+        if (rolloverPolicy.isEnabled()) {
+            return rolloverIndexName(time);
         }
+
+        CachedName cached = this.cachedName;
+        if (cached != null && time >= cached.start && time < cached.end) {
+            return cached.name;
+        }
+
+        Resolution resolution = this.resolution;
+        String name = formatName(time, resolution);
+        long start = truncateTime(time, resolution);
+        if (cached == null || start > cached.start) {
+            //keep the newest bucket only, so late events do not evict it
+            this.cachedName = new CachedName(start, start + resolution.durationMilliseconds, name);
+        }
+        return name;
+    }
+
+    private String formatName(long time, Resolution resolution) {
+        int prefixLength = prefix.length();
+        char[] buffer = new char[prefixLength + resolution.substringLength];
+        prefix.getChars(0, prefixLength, buffer, 0);
+        UtcTimestamps.format(time, buffer, prefixLength, resolution.substringLength);
+        return new String(buffer);
     }
 
     public Reference<LuceneIndex> index(long time) throws IOException {
         return luceneIndices.provide(indexName(time));
     }
 
+    /**
+     * Switches series to rollover mode, where new index is started when the current one exceeds the limits
+     * instead of fixed time buckets. Index is named by start of its time range at second resolution
+     * and its range ends where the next index starts.
+     * With timestamp field configured, bounds of documents kept in metadata survive restart.
+     * @param rolloverPolicy rollover policy, RolloverPolicy.DISABLED for fixed buckets
+     */
+    public void setRolloverPolicy(@NonNull RolloverPolicy rolloverPolicy) {
+        synchronized (pinned) {
+            this.rolloverPolicy = rolloverPolicy;
+            this.rollover = null;
+            this.rolloverStarts = null;
+        }
+    }
+
+    private String rolloverIndexName(long time) throws IOException {
+        return route(time, false);
+    }
+
+    private String route(long time) throws IOException {
+        if (!rolloverPolicy.isEnabled()) {
+            return indexName(time);
+        }
+        return route(time, true);
+    }
+
+    private String route(long time, boolean write) throws IOException {
+        synchronized (pinned) {
+            Rollover current = provideRollover();
+            if (current != null && time >= current.start) {
+                if (write) {
+                    //documents of the current index are all before the start of the next one
+                    long nextStart = truncateTime(current.maxTimestamp, Resolution.SECOND) + Resolution.SECOND.durationMilliseconds;
+                    if (current.due && time >= nextStart && time - current.start >= rolloverPolicy.getMinDurationMillis()) {
+                        current = new Rollover(formatName(time, Resolution.SECOND), truncateTime(time, Resolution.SECOND));
+                        rollover = current;
+                        rolloverStarts().put(current.name, current.start);
+                    }
+                    current.maxTimestamp = Math.max(current.maxTimestamp, time);
+                }
+                return current.name;
+            }
+
+            if (current == null && write) {
+                current = new Rollover(formatName(time, Resolution.SECOND), truncateTime(time, Resolution.SECOND));
+                current.maxTimestamp = time;
+                rollover = current;
+                rolloverStarts().put(current.name, current.start);
+                return current.name;
+            }
+        }
+
+        String floor = floorName(time);
+        if (floor != null) {
+            return floor;
+        }
+        //earlier than the oldest index, so a new one is started
+        return formatName(time, Resolution.SECOND);
+    }
+
+    private Rollover provideRollover() throws IOException {
+        if (rollover == null) {
+            Map.Entry<String, Long> newestEntry = rolloverStarts().lastEntry();
+            if (newestEntry != null) {
+                String newest = newestEntry.getKey();
+                long newestStart = newestEntry.getValue();
+                Rollover current = new Rollover(newest, newestStart);
+                current.maxTimestamp = newestStart;
+                LuceneIndexMetadata metadata = luceneIndices.metadata(newest);
+                if (metadata != null && metadata.getMaxTimestamp() != null) {
+                    current.maxTimestamp = Math.max(newestStart, metadata.getMaxTimestamp());
+                }
+                rollover = current;
+            }
+        }
+        return rollover;
+    }
+
+    private void checkRollover(LuceneIndex index) throws IOException {
+        RolloverPolicy policy = this.rolloverPolicy;
+        Rollover current;
+        boolean checkSize;
+        synchronized (pinned) {
+            current = rollover;
+            if (current == null || current.due || !current.name.equals(index.getName())) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            checkSize = policy.getMaxBytes() != null && now - current.lastSizeCheck >= SIZE_CHECK_INTERVAL_MILLIS;
+            if (checkSize) {
+                current.lastSizeCheck = now;
+            }
+        }
+
+        boolean due = policy.getMaxDocs() != null && index.numDocs() >= policy.getMaxDocs();
+        due |= checkSize && index.sizeInBytes() >= policy.getMaxBytes();
+        if (due) {
+            synchronized (pinned) {
+                current.due = true;
+            }
+        }
+    }
+
+    private long rolloverStart(String name) {
+        if (catalog.hidden.contains(name)) {
+            return Long.MIN_VALUE;
+        }
+        Resolution resolution = resolutionOf(name);
+        if (resolution == null) {
+            return Long.MIN_VALUE;
+        }
+        return UtcTimestamps.parse(name, prefix.length(), resolution.substringLength);
+    }
+
+    private NavigableMap<String, Long> rolloverStarts() throws IOException {
+        synchronized (pinned) {
+            Catalog catalog = this.catalog;
+            if (rolloverStarts == null || rolloverStartsCatalog != catalog) {
+                TreeMap<String, Long> starts = new TreeMap<>();
+                for (String name : luceneIndices.names(prefix, true)) {
+                    long start = rolloverStart(name);
+                    if (start != Long.MIN_VALUE) {
+                        starts.put(name, start);
+                    }
+                }
+                rolloverStarts = starts;
+                rolloverStartsCatalog = catalog;
+            }
+            return rolloverStarts;
+        }
+    }
+
+    private String floorName(long time) throws IOException {
+        synchronized (pinned) {
+            return rolloverStarts().floorKey(formatName(time, Resolution.SECOND));
+        }
+    }
+
+    private Map.Entry<String, Long> higherRollover(String name) throws IOException {
+        synchronized (pinned) {
+            return rolloverStarts().higherEntry(name);
+        }
+    }
+
+    public void setMaxPinnedIndices(int maxPinnedIndices) throws IOException {
+        if (maxPinnedIndices < 0) {
+            throw new IllegalArgumentException("maxPinnedIndices < 0");
+        }
+        this.maxPinnedIndices = maxPinnedIndices;
+        release(evictPinned());
+    }
+
+    /**
+     * Adds document to the index of bucket selected by timestamp
+     * @param timestamp document timestamp
+     * @param doc document
+     * @throws IOException
+     */
+    public void addDocument(long timestamp, @NonNull Iterable<? extends IndexableField> doc) throws IOException {
+        write(route(timestamp), Collections.<Iterable<? extends IndexableField>>singletonList(doc));
+    }
+
+    /**
+     * Adds documents grouped by buckets selected by their timestamps, each bucket with a single writer operation
+     * @param docs documents with timestamps
+     * @throws IOException
+     */
+    public void addDocuments(@NonNull Collection<TimestampedDocument> docs) throws IOException {
+        Map<String, List<Iterable<? extends IndexableField>>> buckets = new LinkedHashMap<>();
+        String lastName = null;
+        List<Iterable<? extends IndexableField>> lastBucket = null;
+        for (TimestampedDocument doc : docs) {
+            String name = route(doc.getTimestamp());
+            if (!name.equals(lastName)) {
+                lastName = name;
+                lastBucket = buckets.get(name);
+                if (lastBucket == null) {
+                    lastBucket = new ArrayList<>();
+                    buckets.put(name, lastBucket);
+                }
+            }
+            lastBucket.add(doc.getDocument());
+        }
+
+        for (Map.Entry<String, List<Iterable<? extends IndexableField>>> bucket : buckets.entrySet()) {
+            write(bucket.getKey(), bucket.getValue());
+        }
+    }
+
+    private void write(String name, List<Iterable<? extends IndexableField>> docs) throws IOException {
+        PinnedIndex pinnedIndex = usePinned(name);
+        try {
+            pinnedIndex.index.addDocuments(docs);
+            if (rolloverPolicy.isEnabled()) {
+                checkRollover(pinnedIndex.index);
+            }
+        } finally {
+            releasePinned(pinnedIndex);
+        }
+    }
+
+    private PinnedIndex usePinned(String name) throws IOException {
+        while (true) {
+            synchronized (pinned) {
+                name = catalog.redirect(name);
+                PinnedIndex pinnedIndex = pinned.get(name);
+                if (pinnedIndex != null) {
+                    if (pinnedIndex.index.isOpen()) {
+                        pinnedIndex.users++;
+                        return pinnedIndex;
+                    }
+                    //closed externally, so its acquisition is no longer tracked
+                    pinned.remove(name);
+                    pinnedIndex.evicted = true;
+                    pinnedIndex.stale = true;
+                }
+            }
+
+            LuceneIndex index = acquireWritable(name);
+            List<LuceneIndex> toRelease = null;
+            PinnedIndex pinnedIndex = null;
+            synchronized (pinned) {
+                if (!catalog.redirect(name).equals(name)) {
+                    toRelease = Collections.singletonList(index); //compaction started concurrently
+                } else {
+                    pinnedIndex = pinned.get(name);
+                    if (pinnedIndex != null && pinnedIndex.index.isOpen()) {
+                        toRelease = Collections.singletonList(index); //pinned concurrently
+                    } else {
+                        pinnedIndex = new PinnedIndex(index);
+                        pinned.put(name, pinnedIndex);
+                    }
+                    //counted before eviction, so even if evicted at once it is released only by its user
+                    pinnedIndex.users++;
+                    if (toRelease == null) {
+                        toRelease = evictPinned();
+                    }
+                }
+            }
+            release(toRelease);
+            if (pinnedIndex != null) {
+                return pinnedIndex;
+            }
+        }
+    }
+
+    private void releasePinned(PinnedIndex pinnedIndex) throws IOException {
+        boolean release;
+        synchronized (pinned) {
+            pinnedIndex.users--;
+            release = pinnedIndex.evicted && !pinnedIndex.stale && pinnedIndex.users == 0;
+        }
+        if (release) {
+            luceneIndices.release(pinnedIndex.index);
+        }
+    }
+
+    private List<LuceneIndex> evictPinned() {
+        List<LuceneIndex> toRelease = new ArrayList<>();
+        synchronized (pinned) {
+            Iterator<PinnedIndex> iterator = pinned.values().iterator();
+            while (pinned.size() > maxPinnedIndices && iterator.hasNext()) {
+                PinnedIndex eldest = iterator.next();
+                iterator.remove();
+                eldest.evicted = true;
+                if (eldest.users == 0) {
+                    toRelease.add(eldest.index);
+                }
+            }
+        }
+        return toRelease;
+    }
+
+    private void release(List<LuceneIndex> indices) throws IOException {
+        for (LuceneIndex index : indices) {
+            luceneIndices.release(index);
+        }
+    }
+
+    public void setRetentionPolicy(@NonNull RetentionPolicy retentionPolicy) {
+        if (retentionPolicy.isEnabled() && retentionPolicy.getCheckIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("checkInterval <= 0");
+        }
+
+        synchronized (pinned) {
+            this.retentionPolicy = retentionPolicy;
+            if (retentionTask != null) {
+                retentionTask.cancel(false);
+                retentionTask = null;
+            }
+
+            if (retentionPolicy.isEnabled()) {
+                retentionTask = schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            applyRetention();
+                        } catch (Throwable ignore) { } //ensure that this will be called in the future
+                    }
+                }, retentionPolicy.getCheckIntervalMillis());
+            }
+        }
+    }
+
+    public void setCompactionPolicy(@NonNull CompactionPolicy compactionPolicy) {
+        if (compactionPolicy.isEnabled() && compactionPolicy.getCheckIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("checkInterval <= 0");
+        }
+
+        synchronized (pinned) {
+            this.compactionPolicy = compactionPolicy;
+            if (compactionTask != null) {
+                compactionTask.cancel(false);
+                compactionTask = null;
+            }
+
+            if (compactionPolicy.isEnabled()) {
+                compactionTask = schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            compact();
+                        } catch (Throwable ignore) { } //ensure that this will be called in the future
+                    }
+                }, compactionPolicy.getCheckIntervalMillis());
+            }
+        }
+    }
+
+    /**
+     * Enables tiers of indices by age. Indices of warm and cold tiers are opened read-only
+     * and transitioned in background on indices optimization thread, with throttled merges.
+     * Already opened indices are not affected until reopened.
+     * @param tieringPolicy tiering policy
+     */
+    public void setTieringPolicy(@NonNull TieringPolicy tieringPolicy) {
+        if (tieringPolicy.isEnabled() && tieringPolicy.getCheckIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("checkInterval <= 0");
+        }
+
+        synchronized (pinned) {
+            this.tieringPolicy = tieringPolicy;
+            if (tieringTask != null) {
+                tieringTask.cancel(false);
+                tieringTask = null;
+            }
+
+            updateCustomizer();
+            if (tieringPolicy.isEnabled()) {
+                tieringTask = schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            applyTiering();
+                        } catch (Throwable ignore) { } //ensure that this will be called in the future
+                    }
+                }, tieringPolicy.getCheckIntervalMillis());
+            }
+        }
+    }
+
+    /**
+     * Sets merge policy of series indices, so only segments adjacent in time are merged
+     * and indices of finalized tiers are not merged again. Already opened indices are not affected until reopened.
+     * @param mergePolicy merge policy or null for merge policy of underlying indices
+     */
+    public void setMergePolicy(TimeSeriesMergePolicy mergePolicy) {
+        synchronized (pinned) {
+            this.mergePolicy = mergePolicy;
+            updateCustomizer();
+        }
+    }
+
+    private void updateCustomizer() {
+        if (tieringPolicy.isEnabled() || mergePolicy != null) {
+            luceneIndices.addCustomizer(customizer);
+        } else {
+            luceneIndices.removeCustomizer(customizer);
+        }
+    }
+
+    private void customizeMerges(LuceneIndex index) {
+        final TimeSeriesMergePolicy mergePolicy = this.mergePolicy;
+        if (mergePolicy == null) {
+            return;
+        }
+        final IndexWriterConfigSupplier base = index.getIndexWriterConfigSupplier();
+        index.setIndexWriterConfigSupplier(new IndexWriterConfigSupplier() {
+            @Override
+            public IndexWriterConfig get(Analyzer analyzer) {
+                IndexWriterConfig config = base != null ? base.get(analyzer) : new IndexWriterConfig(analyzer);
+                config.setMergePolicy(mergePolicy);
+                return config;
+            }
+        });
+    }
+
+    /**
+     * Tier of index by the age of its time range
+     * @param name index name
+     * @return tier, HOT when tiering is disabled
+     */
+    public Tier tierOf(String name) throws IOException {
+        TieringPolicy policy = this.tieringPolicy;
+        if (!policy.isEnabled()) {
+            return Tier.HOT;
+        }
+        TimeRange range = rangeOf(name);
+        if (range == null) {
+            return Tier.HOT;
+        }
+
+        long age = System.currentTimeMillis() - range.getEndAsTimestamp();
+        if (age >= policy.getColdAfterMillis()) {
+            return Tier.COLD;
+        }
+        if (age >= policy.getWarmAfterMillis()) {
+            return Tier.WARM;
+        }
+        return Tier.HOT;
+    }
+
+    /**
+     * Submits transitions of indices which tier has changed and closes idle cold indices
+     * @return names of indices which transitions have been submitted
+     * @throws IOException
+     */
+    public List<String> applyTiering() throws IOException {
+        if (!tieringPolicy.isEnabled()) {
+            return Collections.emptyList();
+        }
+
+        List<String> submitted = new ArrayList<>();
+        for (final String name : indicesNames()) {
+            final Tier tier = tierOf(name);
+            if (tier == Tier.HOT) continue;
+            LuceneIndexMetadata metadata = luceneIndices.metadata(name);
+            if (metadata == null) continue; //nothing committed yet
+
+            String current = metadata.getCommitData().get(TIER_KEY);
+            boolean transitioned = tier.name().equals(current) || (tier == Tier.WARM && Tier.COLD.name().equals(current));
+            synchronized (pinned) {
+                if (transitioning.containsKey(name)) continue;
+                transitioned &= !writable.contains(name);
+                if (!transitioned) {
+                    transitioning.put(name, tier);
+                }
+            }
+
+            if (transitioned) {
+                if (tier == Tier.COLD && luceneIndices.isOpen(name)) {
+                    luceneIndices.closeIfIdle(name);
+                }
+            } else {
+                luceneIndices.executeOptimization(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            doTransition(name, tier);
+                        } catch (Throwable ignore) { } //retried in the next run
+                    }
+                });
+                submitted.add(name);
+            }
+        }
+        return submitted;
+    }
+
+    /**
+     * Transitions index to a given tier in the current thread
+     * @return false if index is in use or being transitioned already, so it has not been transitioned
+     * @throws IOException
+     */
+    public boolean transition(String name, @NonNull Tier tier) throws IOException {
+        synchronized (pinned) {
+            if (transitioning.containsKey(name)) {
+                return false;
+            }
+            transitioning.put(name, tier);
+        }
+        return doTransition(name, tier);
+    }
+
+    private boolean doTransition(String name, Tier tier) throws IOException {
+        try {
+            if (!luceneIndices.closeIfIdle(name)) {
+                return false;
+            }
+
+            //reopened with transition writer configuration
+            LuceneIndex index = luceneIndices.acquire(name);
+            try {
+                IndexWriter writer = index.acquireWriter();
+                try {
+                    LiveCommitData.put(writer, Collections.singletonMap(TIER_KEY, tier.name()));
+                    writer.forceMerge(1, true);
+                    index.commit();
+                } finally {
+                    index.release(writer);
+                }
+            } finally {
+                luceneIndices.release(index);
+            }
+
+            synchronized (pinned) {
+                writable.remove(name);
+            }
+        } finally {
+            synchronized (pinned) {
+                transitioning.remove(name);
+            }
+        }
+
+        //reopened read-only on the next use
+        luceneIndices.closeIfIdle(name);
+        return true;
+    }
+
+    private void customizeTier(String name, LuceneIndex index) throws IOException {
+        if (!tieringPolicy.isEnabled()) {
+            return;
+        }
+
+        Tier transition;
+        synchronized (pinned) {
+            transition = transitioning.get(name);
+            if (transition == null && writable.contains(name)) {
+                return;
+            }
+        }
+
+        if (transition != null) {
+            index.setIndexWriterConfigSupplier(transitionConfig(transition, index.getIndexWriterConfigSupplier()));
+        } else if (tierOf(name) != Tier.HOT) {
+            index.setOpenMode(LuceneOpenMode.READ_ONLY);
+        }
+    }
+
+    private IndexWriterConfigSupplier transitionConfig(final Tier tier, final IndexWriterConfigSupplier base) {
+        final Double maxMergeMBPerSec = tieringPolicy.getMaxMergeMBPerSec();
+        return new IndexWriterConfigSupplier() {
+            @Override
+            public IndexWriterConfig get(Analyzer analyzer) {
+                IndexWriterConfig config = base != null ? base.get(analyzer) : new IndexWriterConfig(analyzer);
+                ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+                if (maxMergeMBPerSec != null) {
+                    mergeScheduler.setForceMergeMBPerSec(maxMergeMBPerSec);
+                }
+                config.setMergeScheduler(mergeScheduler);
+                if (tier == Tier.COLD) {
+                    config.setCodec(new Lucene70Codec(Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION));
+                    config.setMergePolicy(new RecompressingMergePolicy(config.getMergePolicy()));
+                }
+                return config;
+            }
+        };
+    }
+
+    /**
+     * Rewrites segments, including a single one, unless their stored fields are already best compressed
+     */
+    private static final class RecompressingMergePolicy extends UpgradeIndexMergePolicy {
+        RecompressingMergePolicy(MergePolicy in) {
+            super(in);
+        }
+
+        @Override
+        protected boolean shouldUpgradeSegment(SegmentCommitInfo si) {
+            return !Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION.name().equals(si.info.getAttribute(Lucene50StoredFieldsFormat.MODE_KEY));
+        }
+    }
+
+    private LuceneIndex acquireWritable(String name) throws IOException {
+        LuceneIndex index = luceneIndices.acquire(name);
+        if (!index.isReadOnly() || !tieringPolicy.isEnabled()) {
+            return index;
+        }
+
+        //index of old tier is made writable in place (readers keep it opened) until it is transitioned again
+        synchronized (pinned) {
+            writable.add(name);
+        }
+        try {
+            index.makeWritable();
+        } catch (IOException | RuntimeException e) {
+            synchronized (pinned) {
+                writable.remove(name);
+            }
+            luceneIndices.release(index);
+            throw e;
+        }
+        return index;
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long interval) {
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, luceneIndices.toString() + "-" + prefix + "-maintenance");
+                    if (!t.isDaemon())
+                        t.setDaemon(true);
+                    if (t.getPriority() != Thread.NORM_PRIORITY - 1)
+                        t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                }
+            });
+        }
+        return scheduler.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            retentionTask = null;
+            compactionTask = null;
+            tieringTask = null;
+        }
+    }
+
+    /**
+     * Compacts indices according to compaction policy
+     * @return names of compacted indices
+     * @throws IOException
+     */
+    public List<String> compact() throws IOException {
+        CompactionPolicy policy = this.compactionPolicy;
+        if (!policy.isEnabled() || rolloverPolicy.isEnabled()) {
+            return Collections.emptyList();
+        }
+        return compact(policy.getTargetResolution(), System.currentTimeMillis() - policy.getDelayMillis(), policy.isOptimize());
+    }
+
+    /**
+     * Merges indices of finer resolution into one index per time range of target resolution.
+     * Only time ranges ending before given time are compacted.
+     * Compacted index replaces its sources in lookups at once, sources are deleted when no longer acquired.
+     * If the process stops after compacted index has been committed but before its sources were deleted,
+     * both are visible until the next compaction run, which deletes remaining sources.
+     * @param target resolution of compacted indices
+     * @param before time ranges ending after this time are skipped
+     * @param optimize whether compacted index should be force-merged into a single segment
+     * @return names of compacted indices
+     * @throws IOException
+     */
+    public List<String> compact(@NonNull Resolution target, long before, boolean optimize) throws IOException {
+        if (rolloverPolicy.isEnabled()) {
+            throw new IllegalStateException("Rollover indices are not compacted");
+        }
+
+        synchronized (compactionLock) {
+            forgetDeletedSources();
+
+            Map<String, List<String>> groups = new TreeMap<>();
+            Catalog catalog = this.catalog;
+            for (String name : luceneIndices.names(prefix, false)) {
+                if (catalog.hidden.contains(name) || catalog.redirects.containsKey(name)) continue;
+                Resolution resolution = resolutionOf(name);
+                if (resolution == null || resolution.durationMilliseconds >= target.durationMilliseconds) continue;
+                TimeRange range = rangeOf(name);
+                if (range == null) continue;
+
+                long start = truncateTime(range.getStartAsTimestamp(), target);
+                if (start + target.durationMilliseconds > before) continue;
+
+                String targetName = formatName(start, target);
+                List<String> sources = groups.get(targetName);
+                if (sources == null) {
+                    sources = new ArrayList<>();
+                    groups.put(targetName, sources);
+                }
+                sources.add(name);
+            }
+
+            List<String> compacted = new ArrayList<>();
+            for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+                if (compact(group.getKey(), group.getValue(), optimize)) {
+                    compacted.add(group.getKey());
+                }
+            }
+            return compacted;
+        }
+    }
+
+    private boolean compact(String target, List<String> sources, boolean optimize) throws IOException {
+        boolean created = !luceneIndices.exists(target);
+        List<LuceneIndex> toRelease = new ArrayList<>();
+        synchronized (pinned) {
+            for (String source : sources) {
+                PinnedIndex pinnedIndex = pinned.get(source);
+                if (pinnedIndex != null && pinnedIndex.users > 0) {
+                    return false; //being written right now, retry in the next run
+                }
+            }
+            for (String source : sources) {
+                PinnedIndex pinnedIndex = pinned.remove(source);
+                if (pinnedIndex != null) {
+                    pinnedIndex.evicted = true;
+                    if (!pinnedIndex.stale) {
+                        toRelease.add(pinnedIndex.index);
+                    }
+                }
+            }
+            //from now on late writes go to the compacted index
+            Collection<String> hide = created ? Collections.singleton(target) : Collections.<String>emptySet();
+            catalog = catalog.change(hide, Collections.<String>emptySet(), sources, target);
+        }
+        release(toRelease);
+
+        boolean swapped = false;
+        try {
+            merge(target, sources, optimize);
+
+            synchronized (pinned) {
+                catalog = catalog.change(sources, Collections.singleton(target), Collections.<String>emptySet(), null);
+            }
+            swapped = true;
+        } finally {
+            if (!swapped) {
+                //target keeps nothing but late writes, so it is shown along with its sources again
+                synchronized (pinned) {
+                    catalog = catalog.change(Collections.<String>emptySet(), Collections.singleton(target), sources, null);
+                }
+            }
+        }
+
+        for (String source : sources) {
+            luceneIndices.deleteWhenReleased(source);
+        }
+        return true;
+    }
+
+    private void merge(String target, List<String> sources, boolean optimize) throws IOException {
+        LuceneIndex targetIndex = acquireWritable(target);
+        try {
+            IndexWriter writer = targetIndex.acquireWriter();
+            //writer is shared with late writes, so on failure only documents of this run are deleted
+            long marker = COMPACTION_MARKERS.incrementAndGet();
+            boolean added = false;
+            String previousMerged = null;
+            boolean markedMerged = false;
+            try {
+                //sources listed in the last commit have already been merged before restart
+                Set<String> merged = new TreeSet<>();
+                String mergedValue = LiveCommitData.get(writer).get(COMPACTED_SOURCES_KEY);
+                if (mergedValue != null) {
+                    for (String name : mergedValue.split(",")) {
+                        if (!name.isEmpty() && luceneIndices.exists(name)) {
+                            merged.add(name);
+                        }
+                    }
+                }
+
+                List<LuceneIndex> sourceIndices = new ArrayList<>();
+                List<DirectoryReader> readers = new ArrayList<>();
+                try {
+                    List<CodecReader> codecReaders = new ArrayList<>();
+                    for (String source : sources) {
+                        if (merged.contains(source)) continue;
+                        LuceneIndex sourceIndex = luceneIndices.acquire(source);
+                        sourceIndices.add(sourceIndex);
+                        DirectoryReader reader = sourceIndex.acquireReader();
+                        readers.add(reader);
+                        for (LeafReaderContext leaf : reader.leaves()) {
+                            codecReaders.add(new CompactionMarkingReader(SlowCodecReaderWrapper.wrap(leaf.reader()), COMPACTION_MARKER_FIELD, marker));
+                        }
+                    }
+                    if (!codecReaders.isEmpty()) {
+                        added = true;
+                        writer.addIndexes(codecReaders.toArray(new CodecReader[codecReaders.size()]));
+                    }
+                } finally {
+                    for (int i = 0; i < readers.size(); i++) {
+                        sourceIndices.get(i).release(readers.get(i));
+                    }
+                    for (LuceneIndex sourceIndex : sourceIndices) {
+                        luceneIndices.release(sourceIndex);
+                    }
+                }
+
+                if (optimize) {
+                    writer.forceMerge(1);
+                }
+
+                merged.addAll(sources);
+                StringBuilder mergedNames = new StringBuilder();
+                for (String name : merged) {
+                    if (mergedNames.length() > 0) {
+                        mergedNames.append(',');
+                    }
+                    mergedNames.append(name);
+                }
+                previousMerged = LiveCommitData.put(writer, Collections.singletonMap(COMPACTED_SOURCES_KEY, mergedNames.toString())).get(COMPACTED_SOURCES_KEY);
+                markedMerged = true;
+                targetIndex.commit();
+            } catch (IOException | RuntimeException e) {
+                //nothing of unfinished compaction becomes visible with the next commit of target
+                try {
+                    if (markedMerged) {
+                        LiveCommitData.put(writer, Collections.singletonMap(COMPACTED_SOURCES_KEY, previousMerged));
+                    }
+                    if (added) {
+                        writer.deleteDocuments(NumericDocValuesField.newSlowExactQuery(COMPACTION_MARKER_FIELD, marker));
+                    }
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            } finally {
+                targetIndex.release(writer);
+            }
+        } finally {
+            luceneIndices.release(targetIndex);
+        }
+    }
+
+    private void forgetDeletedSources() throws IOException {
+        List<String> deleted = new ArrayList<>();
+        for (String source : catalog.redirects.keySet()) {
+            if (!luceneIndices.exists(source)) {
+                deleted.add(source);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            synchronized (pinned) {
+                catalog = catalog.change(Collections.<String>emptySet(), deleted, deleted, null);
+            }
+        }
+    }
+
+    /**
+     * Drops indices exceeding retention policy limits, oldest first.
+     * Index of the current (or future) bucket is never dropped.
+     * @return names of dropped indices
+     * @throws IOException
+     */
+    public List<String> applyRetention() throws IOException {
+        RetentionPolicy policy = this.retentionPolicy;
+        List<String> dropped = new ArrayList<>();
+        if (!policy.isEnabled()) {
+            return dropped;
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        List<TimeRange> ranges = new ArrayList<>();
+        boolean rollover = rolloverPolicy.isEnabled();
+        for (String name : indicesNames()) {
+            TimeRange range;
+            if (rollover) {
+                //ranges are resolved sequentially, as each one ends where the next one starts
+                long start = rolloverStart(name);
+                if (start == Long.MIN_VALUE) continue;
+                if (!ranges.isEmpty()) {
+                    ranges.get(ranges.size() - 1).setEndAsTimestamp(start - 1);
+                }
+                range = new TimeRange(start, Long.MAX_VALUE);
+            } else {
+                range = rangeOf(name);
+                if (range == null) continue;
+            }
+            names.add(name);
+            ranges.add(range);
+        }
+
+        long[] sizes = null;
+        long totalBytes = 0;
+        if (policy.getMaxTotalBytes() != null) {
+            sizes = new long[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                LuceneIndexMetadata metadata = luceneIndices.metadata(names.get(i));
+                sizes[i] = metadata != null ? metadata.getSizeInBytes() : 0;
+                totalBytes += sizes[i];
+            }
+        }
+
+        int remaining = names.size();
+        for (int i = 0; i < names.size(); i++) {
+            TimeRange range = ranges.get(i);
+            if (range.getEndAsTimestamp() >= now) {
+                break;
+            }
+
+            boolean drop = policy.getMaxAgeMillis() != null && range.getEndAsTimestamp() < now - policy.getMaxAgeMillis();
+            drop |= policy.getMaxIndices() != null && remaining > policy.getMaxIndices();
+            drop |= policy.getMaxTotalBytes() != null && totalBytes > policy.getMaxTotalBytes();
+            if (!drop) {
+                break;
+            }
+
+            luceneIndices.delete(names.get(i));
+            dropped.add(names.get(i));
+            synchronized (pinned) {
+                rolloverStarts = null;
+            }
+            remaining--;
+            if (sizes != null) {
+                totalBytes -= sizes[i];
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Releases indices pinned for routed writes and stops background maintenance
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (pinned) {
+            stopScheduler();
+            luceneIndices.removeCustomizer(customizer);
+        }
+
+        List<LuceneIndex> toRelease = new ArrayList<>();
+        synchronized (pinned) {
+            for (PinnedIndex pinnedIndex : pinned.values()) {
+                pinnedIndex.evicted = true;
+                if (pinnedIndex.users == 0) {
+                    toRelease.add(pinnedIndex.index);
+                }
+            }
+            pinned.clear();
+        }
+        release(toRelease);
+    }
+
     public String[] indicesNames() throws IOException {
         return indicesNames(null, null);
     }
@@ -99,86 +1253,266 @@ public class LuceneTimeSeries {
     }
 
     public String[] indicesNames(Long from, Long to, boolean reverse) throws IOException {
-        Collection<String> selectedCollection = new LinkedList<>();
-        if (from != null && to != null) {
-            selectedCollection = new LinkedList<>();
-            long current = from;
-            while (truncateTime(current, resolution) <= to) {
-                String s = indexName(current);
-                if (luceneIndices.exists(s, true)) {
-                    selectedCollection.add(s);
+        Catalog catalog = this.catalog;
+        List<String> selectedList = new ArrayList<>();
+        if (from == null && to == null) {
+            for (String name : luceneIndices.names(prefix, true)) {
+                if (!catalog.hidden.contains(name)) {
+                    selectedList.add(name);
+                }
+            }
+            Collections.sort(selectedList);
+        } else if (rolloverPolicy.isEnabled()) {
+            String lowest = prefix;
+            if (from != null) {
+                String floor = floorName(from);
+                if (floor != null) {
+                    lowest = floor;
+                }
+            }
+            String highest = to != null ? formatName(to, Resolution.SECOND) : prefix + Character.MAX_VALUE;
+
+            String previous = null;
+            for (String name : luceneIndices.namesBetween(lowest, highest, true)) {
+                long start = rolloverStart(name);
+                if (start == Long.MIN_VALUE) continue;
+                if (previous != null && (from == null || start - 1 >= from)) {
+                    selectedList.add(previous);
+                }
+                previous = name;
+            }
+            if (previous != null) {
+                selectedList.add(previous);
+            }
+        } else {
+            //sorted range lookup, cost is proportional to the number of existing indices in the range;
+            //name of coarser (e.g. compacted) index is a prefix of names of finer ones in its range,
+            //so bounds are formatted with the coarsest and the finest resolution
+            String lowest = from != null ? formatName(from, Resolution.DAY) : prefix;
+            String highest = to != null ? formatName(to, Resolution.SECOND) : prefix + Character.MAX_VALUE;
+
+            for (String name : luceneIndices.namesBetween(lowest, highest, true)) {
+                if (catalog.hidden.contains(name)) continue;
+                TimeRange timeRange = rangeOf(name);
+                if (timeRange == null) continue;
+
+                if ((from == null || timeRange.getEndAsTimestamp() >= from) && (to == null || timeRange.getStartAsTimestamp() <= to)) {
+                    selectedList.add(name);
                 }
-                current += resolution.durationMilliseconds;
             }
         }
-        else {
-            for (String name : luceneIndices.names(prefix, true)) {
-                boolean ok = true;
-                if (from != null || to != null) {
-                    TimeRange timeRange = rangeOf(name);
-                    if (timeRange == null) continue;
 
-                    if (from != null) {
-                        ok = timeRange.getEndAsTimestamp() > from;
-                    }
-                    if (ok && to != null) {
-                        ok = timeRange.getStartAsTimestamp() < to;
+        if (reverse) {
+            Collections.reverse(selectedList);
+        }
+        return selectedList.toArray(new String[selectedList.size()]);
+    }
+
+    public IndicesPreload preload(Long from, Long to, PreloadOptions options) throws IOException {
+        return luceneIndices.preload(Arrays.asList(indicesNames(from, to)), options);
+    }
+
+    /**
+     * Finds index of the series containing document with a given ID (see {@link LuceneIndices#setIdField(String)}),
+     * visiting the latest indices first and opening only those which ID filters may contain it
+     * @param id document ID
+     * @return index name or null if not found
+     * @throws IOException
+     */
+    public String findById(@NonNull String id) throws IOException {
+        String[] names = indicesNames(null, null, true);
+        if (names.length == 0) {
+            return null;
+        }
+        return luceneIndices.findById(id, names);
+    }
+
+    /**
+     * Searches indices of the series using timestamp field set in underlying indices.
+     * Required timestamp range clauses (the query itself or top-level filter clauses) are taken as time bounds.
+     * @see #search(LuceneSearch, Long, Long)
+     */
+    public LuceneSearchResults search(@NonNull LuceneSearch search) throws IOException {
+        return search(search, null, null);
+    }
+
+    /**
+     * Searches indices of the series that may contain documents in a given time range.
+     * Time range filter is evaluated only in boundary indices, indices fully inside the range are searched
+     * with the query alone. When results are sorted by timestamp field, indices are visited in time order
+     * and search stops as soon as requested number of hits is collected.
+     * @param search search, may contain timestamp range clauses which are merged with the given bounds
+     * @param from lower bound (inclusive), null for unbounded
+     * @param to upper bound (inclusive), null for unbounded
+     * @return search results
+     * @throws IOException
+     */
+    public LuceneSearchResults search(@NonNull LuceneSearch search, Long from, Long to) throws IOException {
+        String timestampField = luceneIndices.getTimestampField();
+        if (timestampField == null) {
+            throw new IllegalStateException("Timestamp field is not set");
+        }
+
+        //extract time bounds from the query, so they are not evaluated in every document
+        Query query = search.getQuery();
+        List<BooleanClause> clauses = new ArrayList<>();
+        if (isTimeRange(query, timestampField)) {
+            Long[] bounds = boundsOf((PointRangeQuery) query, from, to);
+            from = bounds[0];
+            to = bounds[1];
+            //constant score, as of range itself, and the range is applied to boundary indices only
+            query = LuceneSearch.MATCH_ALL_QUERY;
+        } else if (query instanceof BooleanQuery) {
+            boolean required = false;
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (clause.getOccur() == BooleanClause.Occur.FILTER && isTimeRange(clause.getQuery(), timestampField)) {
+                    Long[] bounds = boundsOf((PointRangeQuery) clause.getQuery(), from, to);
+                    from = bounds[0];
+                    to = bounds[1];
+                } else {
+                    required |= clause.isRequired();
+                    clauses.add(clause);
+                }
+            }
+            if (clauses.size() < ((BooleanQuery) query).clauses().size()) {
+                if (!required) {
+                    //without required clause optional clauses would become mandatory, and prohibited ones would match nothing
+                    clauses.add(new BooleanClause(LuceneSearch.MATCH_ALL_QUERY, BooleanClause.Occur.FILTER));
+                }
+                if (clauses.size() == 1 && clauses.get(0).getQuery() == LuceneSearch.MATCH_ALL_QUERY) {
+                    query = LuceneSearch.MATCH_ALL_QUERY;
+                } else {
+                    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+                    builder.setMinimumNumberShouldMatch(((BooleanQuery) query).getMinimumNumberShouldMatch());
+                    for (BooleanClause clause : clauses) {
+                        builder.add(clause);
                     }
+                    query = builder.build();
                 }
-                if (ok) {
-                    selectedCollection.add(name);
+            }
+        }
+
+        if (from != null && to != null && to < from) {
+            return new MultiLuceneSearchResults(luceneIndices, new String[0], search);
+        }
+
+        boolean reverse = false;
+        Sort sort = search.getSort();
+        if (sort != null && sort.getSort().length > 0 && timestampField.equals(sort.getSort()[0].getField())) {
+            reverse = sort.getSort()[0].getReverse();
+        }
+
+        String[] names = indicesNames(from, to, reverse);
+        LuceneSearch[] searches = new LuceneSearch[names.length];
+        LuceneSearch coveredSearch = null;
+        LuceneSearch boundarySearch = null;
+        for (int i = 0; i < names.length; i++) {
+            TimeRange timeRange = rangeOf(names[i]);
+            boolean covered = timeRange != null
+                    && (from == null || timeRange.getStartAsTimestamp() >= from)
+                    && (to == null || timeRange.getEndAsTimestamp() <= to);
+
+            if (covered) {
+                if (coveredSearch == null) {
+                    coveredSearch = withQuery(search, query);
+                }
+                searches[i] = coveredSearch;
+            } else {
+                if (boundarySearch == null) {
+                    Query range = LongPoint.newRangeQuery(timestampField,
+                            from != null ? from : Long.MIN_VALUE,
+                            to != null ? to : Long.MAX_VALUE);
+                    Query boundaryQuery = range;
+                    if (query != LuceneSearch.MATCH_ALL_QUERY) {
+                        boundaryQuery = new BooleanQuery.Builder()
+                                .add(query, BooleanClause.Occur.MUST)
+                                .add(range, BooleanClause.Occur.FILTER)
+                                .build();
+                    }
+                    boundarySearch = withQuery(search, boundaryQuery);
                 }
+                searches[i] = boundarySearch;
             }
         }
 
-        String[] selected = selectedCollection.toArray(new String[selectedCollection.size()]);
-        if (!reverse) {
-            Arrays.sort(selected);
-        } else {
-            Arrays.sort(selected, Collections.reverseOrder());
+        if (names.length == 0) {
+            return new MultiLuceneSearchResults(luceneIndices, names, search);
         }
+        return new MultiLuceneSearchResults(luceneIndices, names, searches);
+    }
 
-        return selected;
+    private static boolean isTimeRange(Query query, String timestampField) {
+        if (query instanceof PointRangeQuery) {
+            PointRangeQuery rangeQuery = (PointRangeQuery) query;
+            return timestampField.equals(rangeQuery.getField())
+                    && rangeQuery.getNumDims() == 1
+                    && rangeQuery.getLowerPoint().length == Long.SIZE / Byte.SIZE;
+        }
+        return false;
     }
 
-    public TimeRange rangeOf(String name) {
-        StringBuilder timeString = new StringBuilder(name.substring(prefix.length()));
-        while (timeString.length() < 14) {
-            timeString.append("00");
+    private static Long[] boundsOf(PointRangeQuery query, Long from, Long to) {
+        long lower = LongPoint.decodeDimension(query.getLowerPoint(), 0);
+        long upper = LongPoint.decodeDimension(query.getUpperPoint(), 0);
+        if (lower != Long.MIN_VALUE) {
+            from = from == null ? lower : Math.max(from, lower);
         }
-        try {
-            long time;
-            synchronized (DATE_FORMAT) {
-                time = DATE_FORMAT.parse(timeString.toString()).getTime();
+        if (upper != Long.MAX_VALUE) {
+            to = to == null ? upper : Math.min(to, upper);
+        }
+        return new Long[] { from, to };
+    }
+
+    private static LuceneSearch withQuery(LuceneSearch search, Query query) {
+        return LuceneSearch.builder()
+                .query(query)
+                .numHits(search.getNumHits())
+                .sort(search.getSort())
+                .doDocScore(search.isDoDocScore())
+                .doMaxScore(search.isDoMaxScore())
+                .exactTotal(search.isExactTotal())
+                .build();
+    }
+
+    /**
+     * Resolution of index, which may differ from series resolution for compacted indices
+     * @param name index name
+     * @return resolution or null when name does not belong to this series
+     */
+    public Resolution resolutionOf(String name) {
+        if (!name.startsWith(prefix)) {
+            return null;
+        }
+        return Resolution.ofLength(name.length() - prefix.length());
+    }
+
+    public TimeRange rangeOf(String name) throws IOException {
+        Resolution resolution = resolutionOf(name);
+        if (resolution == null) {
+            return null;
+        }
+
+        if (rolloverPolicy.isEnabled()) {
+            long start = rolloverStart(name);
+            if (start == Long.MIN_VALUE) {
+                return null;
             }
+            Map.Entry<String, Long> next = higherRollover(name);
+            return new TimeRange(start, next != null ? next.getValue() - 1 : Long.MAX_VALUE);
+        }
 
-            long start = truncateTime(time, resolution);
-            long end = nextTime(time, resolution) - 1;
-            return new TimeRange(start, end);
-        } catch (ParseException ignore) {
+        long time = UtcTimestamps.parse(name, prefix.length(), resolution.substringLength);
+        if (time == Long.MIN_VALUE) {
             return null;
         }
+
+        long start = truncateTime(time, resolution);
+        long end = nextTime(time, resolution) - 1;
+        return new TimeRange(start, end);
     }
 
     private static long truncateTime(long time, Resolution resolution) {
-        long t = time;
-        final Calendar cal = Calendar.getInstance(UTC);
-        cal.setTime(new Date(t));
-        final int millis = cal.get(Calendar.MILLISECOND);
-        t -= millis;
-        if (resolution != Resolution.SECOND) {
-            final int seconds = cal.get(Calendar.SECOND);
-            t -= seconds * 1000L;
-            if (resolution != Resolution.MINUTE) {
-                final int minutes = cal.get(Calendar.MINUTE);
-                t -= minutes * 60 * 1000L;
-                if (resolution != Resolution.HOUR) {
-                    final int hours = cal.get(Calendar.HOUR_OF_DAY);
-                    t -= hours * 60 * 60 * 1000L;
-                }
-            }
-        }
-        return t;
+        return UtcTimestamps.floor(time, resolution.durationMilliseconds);
     }
 
     private static long nextTime(long time, Resolution resolution) {
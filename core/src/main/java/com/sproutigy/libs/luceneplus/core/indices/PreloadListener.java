@@ -0,0 +1,6 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+public interface PreloadListener {
+    void onLoaded(String name, int done, int total);
+    void onFailed(String name, Throwable error, int done, int total);
+}
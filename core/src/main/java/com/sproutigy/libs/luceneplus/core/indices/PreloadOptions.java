@@ -0,0 +1,71 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
+import lombok.Value;
+
+/**
+ * Immutable, so presets may be shared
+ */
+@Value
+public class PreloadOptions {
+
+    public static final PreloadOptions OPEN = PreloadOptions.builder().build();
+    public static final PreloadOptions OPEN_AND_WARM = PreloadOptions.builder().warm().build();
+
+    /**
+     * Maximum number of indices opened at the same time
+     */
+    private int parallelism;
+
+    /**
+     * Whether searcher should be opened (and optionally warming search executed) after opening the index
+     */
+    private boolean warm;
+
+    /**
+     * Search executed against every warmed index, may be null
+     */
+    private LuceneSearch warmSearch;
+
+    private PreloadListener listener;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private boolean warm = false;
+        private LuceneSearch warmSearch;
+        private PreloadListener listener;
+
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism < 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder warm() {
+            this.warm = true;
+            return this;
+        }
+
+        public Builder warm(LuceneSearch warmSearch) {
+            this.warm = true;
+            this.warmSearch = warmSearch;
+            return this;
+        }
+
+        public Builder listener(PreloadListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public PreloadOptions build() {
+            return new PreloadOptions(parallelism, warm, warmSearch, listener);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+@AllArgsConstructor
+public class RetentionPolicy {
+
+    public static RetentionPolicy DISABLED = RetentionPolicy.builder().disable().build();
+
+    @Getter
+    private boolean enabled = true;
+
+    /**
+     * Indices which time range ended earlier than this age are dropped, null for unlimited
+     */
+    @Getter
+    private Long maxAgeMillis;
+
+    /**
+     * Oldest indices are dropped while total size of series exceeds this value, null for unlimited
+     */
+    @Getter
+    private Long maxTotalBytes;
+
+    /**
+     * Oldest indices are dropped while series has more indices, null for unlimited
+     */
+    @Getter
+    private Integer maxIndices;
+
+    @Getter
+    private long checkIntervalMillis;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = true;
+        private Long maxAgeMillis;
+        private Long maxTotalBytes;
+        private Integer maxIndices;
+        private long checkIntervalMillis = TimeUnit.MINUTES.toMillis(1);
+
+        public Builder disable() {
+            enabled = false;
+            return this;
+        }
+
+        public Builder maxAge(long maxAge, TimeUnit unit) {
+            this.maxAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        public Builder maxTotalBytes(long maxTotalBytes) {
+            this.maxTotalBytes = maxTotalBytes;
+            return this;
+        }
+
+        public Builder maxIndices(int maxIndices) {
+            this.maxIndices = maxIndices;
+            return this;
+        }
+
+        public Builder checkInterval(long interval, TimeUnit unit) {
+            this.checkIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public RetentionPolicy build() {
+            return new RetentionPolicy(enabled, maxAgeMillis, maxTotalBytes, maxIndices, checkIntervalMillis);
+        }
+    }
+}
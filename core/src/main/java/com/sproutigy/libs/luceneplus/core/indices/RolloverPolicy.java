@@ -0,0 +1,71 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+@AllArgsConstructor
+public class RolloverPolicy {
+
+    public static RolloverPolicy DISABLED = RolloverPolicy.builder().disable().build();
+
+    @Getter
+    private boolean enabled = true;
+
+    /**
+     * New index is started when the current one has more documents, null for unlimited
+     */
+    @Getter
+    private Long maxDocs;
+
+    /**
+     * New index is started when the current one is bigger, null for unlimited
+     */
+    @Getter
+    private Long maxBytes;
+
+    /**
+     * Minimum time range of index, so bursts do not produce many tiny indices
+     */
+    @Getter
+    private long minDurationMillis;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = true;
+        private Long maxDocs;
+        private Long maxBytes;
+        private long minDurationMillis = TimeUnit.MINUTES.toMillis(1);
+
+        public Builder disable() {
+            enabled = false;
+            return this;
+        }
+
+        public Builder maxDocs(long maxDocs) {
+            this.maxDocs = maxDocs;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder minDuration(long minDuration, TimeUnit unit) {
+            this.minDurationMillis = unit.toMillis(minDuration);
+            return this;
+        }
+
+        public RolloverPolicy build() {
+            return new RolloverPolicy(enabled, maxDocs, maxBytes, minDurationMillis);
+        }
+    }
+}
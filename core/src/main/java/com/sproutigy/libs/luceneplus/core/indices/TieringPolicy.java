@@ -0,0 +1,80 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+@AllArgsConstructor
+public class TieringPolicy {
+
+    public static TieringPolicy DISABLED = TieringPolicy.builder().disable().build();
+
+    @Getter
+    private boolean enabled = true;
+
+    /**
+     * Time after the end of index time range, when index becomes warm: merged into a single segment and opened read-only
+     */
+    @Getter
+    private long warmAfterMillis;
+
+    /**
+     * Time after the end of index time range, when index becomes cold: stored fields recompressed and closed when idle
+     */
+    @Getter
+    private long coldAfterMillis;
+
+    /**
+     * I/O rate limit of merges performed by tier transitions, null for unlimited
+     */
+    @Getter
+    private Double maxMergeMBPerSec;
+
+    @Getter
+    private long checkIntervalMillis;
+
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean enabled = true;
+        private long warmAfterMillis = TimeUnit.HOURS.toMillis(1);
+        private long coldAfterMillis = TimeUnit.DAYS.toMillis(7);
+        private Double maxMergeMBPerSec = 20.0;
+        private long checkIntervalMillis = TimeUnit.MINUTES.toMillis(10);
+
+        public Builder disable() {
+            enabled = false;
+            return this;
+        }
+
+        public Builder warmAfter(long warmAfter, TimeUnit unit) {
+            this.warmAfterMillis = unit.toMillis(warmAfter);
+            return this;
+        }
+
+        public Builder coldAfter(long coldAfter, TimeUnit unit) {
+            this.coldAfterMillis = unit.toMillis(coldAfter);
+            return this;
+        }
+
+        public Builder maxMergeMBPerSec(Double maxMergeMBPerSec) {
+            this.maxMergeMBPerSec = maxMergeMBPerSec;
+            return this;
+        }
+
+        public Builder checkInterval(long interval, TimeUnit unit) {
+            this.checkIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public TieringPolicy build() {
+            return new TieringPolicy(enabled, warmAfterMillis, coldAfterMillis, maxMergeMBPerSec, checkIntervalMillis);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+import org.apache.lucene.index.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge policy for append-mostly time series and index-sorted indices.
+ * Only segments adjacent in flush order (so also in time) are merged, segments older or bigger than configured limits
+ * are left alone, and indices of finalized tiers (see {@link LuceneTimeSeries#TIER_KEY}) are merged only when forced.
+ */
+public class TimeSeriesMergePolicy extends LogByteSizeMergePolicy {
+    public static final String TIMESTAMP_DIAGNOSTICS_KEY = "timestamp";
+
+    private long maxSegmentAgeMillis = Long.MAX_VALUE;
+
+    /**
+     * Segments written (flushed or merged) earlier are not merged anymore, except forced merges
+     */
+    public void setMaxSegmentAge(long maxSegmentAge, TimeUnit unit) {
+        if (maxSegmentAge < 0) {
+            throw new IllegalArgumentException("maxSegmentAge < 0");
+        }
+        this.maxSegmentAgeMillis = unit.toMillis(maxSegmentAge);
+    }
+
+    public long getMaxSegmentAgeMillis() {
+        return maxSegmentAgeMillis;
+    }
+
+    /**
+     * Segments bigger than that are not merged anymore, except forced merges
+     */
+    public void setMaxSegmentMB(double maxSegmentMB) {
+        setMaxMergeMB(maxSegmentMB);
+    }
+
+    public double getMaxSegmentMB() {
+        return getMaxMergeMB();
+    }
+
+    @Override
+    public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) throws IOException {
+        if (isFinalized(infos)) {
+            return null;
+        }
+
+        //segments too old split the rest into runs, so merges never bridge over them
+        MergeSpecification spec = null;
+        long now = System.currentTimeMillis();
+        SegmentInfos run = new SegmentInfos(infos.getIndexCreatedVersionMajor());
+        for (SegmentCommitInfo info : infos) {
+            if (isTooOld(info, now)) {
+                spec = findMerges(mergeTrigger, run, writer, spec);
+                run = new SegmentInfos(infos.getIndexCreatedVersionMajor());
+            } else {
+                run.add(info);
+            }
+        }
+        return findMerges(mergeTrigger, run, writer, spec);
+    }
+
+    private MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos run, IndexWriter writer, MergeSpecification spec) throws IOException {
+        if (run.size() < 2) {
+            return spec;
+        }
+        MergeSpecification runSpec = super.findMerges(mergeTrigger, run, writer);
+        if (runSpec == null) {
+            return spec;
+        }
+        if (spec == null) {
+            spec = new MergeSpecification();
+        }
+        for (OneMerge merge : runSpec.merges) {
+            spec.add(merge);
+        }
+        return spec;
+    }
+
+    private boolean isTooOld(SegmentCommitInfo info, long now) {
+        if (maxSegmentAgeMillis == Long.MAX_VALUE) {
+            return false;
+        }
+        String timestamp = info.info.getDiagnostics().get(TIMESTAMP_DIAGNOSTICS_KEY);
+        if (timestamp == null) {
+            return false;
+        }
+        try {
+            return now - Long.parseLong(timestamp) > maxSegmentAgeMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Index of a tier older than hot, recorded in the latest commit, has been already force-merged once when transitioned
+     */
+    private static boolean isFinalized(SegmentInfos infos) {
+        String tier = infos.getUserData().get(LuceneTimeSeries.TIER_KEY);
+        return tier != null && !LuceneTimeSeries.Tier.HOT.name().equals(tier);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getClass().getSimpleName() + ": maxSegmentAgeMillis=" + maxSegmentAgeMillis + " " + super.toString() + "]";
+    }
+}
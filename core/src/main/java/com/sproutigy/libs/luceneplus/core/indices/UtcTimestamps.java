@@ -0,0 +1,122 @@
+package com.sproutigy.libs.luceneplus.core.indices;
+
+/**
+ * Lock-free and allocation-free conversions between epoch milliseconds and "yyyyMMddHHmmss" UTC digits,
+ * based on pure calendar arithmetic (proleptic Gregorian calendar, years 0000-9999).
+ */
+final class UtcTimestamps {
+    static final int MAX_DIGITS = 14;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private UtcTimestamps() { }
+
+    static long floor(long time, long unit) {
+        long remainder = time % unit;
+        if (remainder < 0) {
+            remainder += unit;
+        }
+        return time - remainder;
+    }
+
+    /**
+     * Writes first digits of "yyyyMMddHHmmss" representation of the time
+     */
+    static void format(long time, char[] buffer, int offset, int digits) {
+        long days = floor(time, MILLIS_PER_DAY) / MILLIS_PER_DAY;
+        long millisOfDay = time - days * MILLIS_PER_DAY;
+
+        //civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Time out of supported range: " + time);
+        }
+
+        int hour = (int) (millisOfDay / MILLIS_PER_HOUR);
+        int minute = (int) (millisOfDay % MILLIS_PER_HOUR / MILLIS_PER_MINUTE);
+        int second = (int) (millisOfDay % MILLIS_PER_MINUTE / MILLIS_PER_SECOND);
+
+        int y = (int) year;
+        put(buffer, offset, digits, 0, y / 100);
+        put(buffer, offset, digits, 2, y % 100);
+        put(buffer, offset, digits, 4, month);
+        put(buffer, offset, digits, 6, day);
+        put(buffer, offset, digits, 8, hour);
+        put(buffer, offset, digits, 10, minute);
+        put(buffer, offset, digits, 12, second);
+    }
+
+    private static void put(char[] buffer, int offset, int digits, int position, int value) {
+        if (position < digits) {
+            buffer[offset + position] = (char) ('0' + value / 10);
+            if (position + 1 < digits) {
+                buffer[offset + position + 1] = (char) ('0' + value % 10);
+            }
+        }
+    }
+
+    /**
+     * Parses "yyyyMMddHHmmss" digits, missing trailing fields are assumed to be lowest possible values
+     * @return time or Long.MIN_VALUE if digits are not a valid time
+     */
+    static long parse(CharSequence s, int offset, int digits) {
+        if (digits < 4 || digits > MAX_DIGITS || digits % 2 != 0 || offset + digits > s.length()) {
+            return Long.MIN_VALUE;
+        }
+
+        int year = number(s, offset, 4);
+        int month = digits >= 6 ? number(s, offset + 4, 2) : 1;
+        int day = digits >= 8 ? number(s, offset + 6, 2) : 1;
+        int hour = digits >= 10 ? number(s, offset + 8, 2) : 0;
+        int minute = digits >= 12 ? number(s, offset + 10, 2) : 0;
+        int second = digits >= 14 ? number(s, offset + 12, 2) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        //days from civil, see http://howardhinnant.github.io/date_algorithms.html
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+
+        return days * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND;
+    }
+
+    private static int number(CharSequence s, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.sproutigy.libs.luceneplus.core.mapper;
+
+import com.sproutigy.libs.luceneplus.core.DocumentTemplate;
+import com.sproutigy.libs.luceneplus.core.LuceneFields;
+import com.sproutigy.libs.luceneplus.core.LuceneSchema;
+import com.sproutigy.libs.luceneplus.core.TemplateDocument;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchHit;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps objects with {@link LuceneField} annotated fields to documents and back. Object fields are bound once
+ * to method handles, documents are written with {@link DocumentTemplate} and hits are read from doc values
+ * where possible, from stored fields otherwise (visited directly into the object, without {@link org.apache.lucene.document.Document}).
+ * Objects need a no-argument constructor.
+ */
+public class DocumentMapper<T> {
+    private static final ConcurrentHashMap<Class<?>, DocumentMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    @Getter
+    private final Class<T> type;
+
+    private final MethodHandle constructor;
+
+    private final Property[] properties;
+    private final Property[] docValueProperties;
+    private final Map<String, Property> storedProperties;
+
+    @Getter
+    private final DocumentTemplate template;
+
+    /**
+     * Provides mapper of a given class, bound once and shared
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DocumentMapper<T> of(@NonNull Class<T> type) {
+        DocumentMapper<T> mapper = (DocumentMapper<T>) MAPPERS.get(type);
+        if (mapper == null) {
+            mapper = new DocumentMapper<>(type);
+            DocumentMapper<T> existing = (DocumentMapper<T>) MAPPERS.putIfAbsent(type, mapper);
+            if (existing != null) {
+                mapper = existing;
+            }
+        }
+        return mapper;
+    }
+
+    public DocumentMapper(@NonNull Class<T> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " has no accessible no-argument constructor", e);
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                LuceneField annotation = field.getAnnotation(LuceneField.class);
+                if (annotation != null) {
+                    properties.add(new Property(lookup, field, annotation));
+                }
+            }
+        }
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException(type.getName() + " has no @LuceneField fields");
+        }
+        this.properties = properties.toArray(new Property[properties.size()]);
+
+        DocumentTemplate.Builder templateBuilder = DocumentTemplate.builder();
+        List<Property> docValueProperties = new ArrayList<>();
+        Map<String, Property> storedProperties = new HashMap<>();
+        for (Property property : this.properties) {
+            property.define(templateBuilder);
+            if (property.readsDocValues()) {
+                docValueProperties.add(property);
+            } else if (property.options.isStore()) {
+                storedProperties.put(property.name, property);
+            }
+        }
+        this.template = templateBuilder.build();
+        this.docValueProperties = docValueProperties.toArray(new Property[docValueProperties.size()]);
+        this.storedProperties = storedProperties;
+    }
+
+    /**
+     * @return schema of mapped fields
+     */
+    public LuceneSchema toSchema() {
+        LuceneSchema.Builder builder = LuceneSchema.builder();
+        for (Property property : properties) {
+            property.define(builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes object into document reused by the current thread (see {@link DocumentTemplate#document()})
+     * @param object object
+     * @return document
+     */
+    public TemplateDocument toDocument(@NonNull T object) {
+        return write(object, template.document());
+    }
+
+    /**
+     * Writes object into a new document, e.g. for batch writes
+     * @param object object
+     * @return document
+     */
+    public TemplateDocument newDocument(@NonNull T object) {
+        return write(object, template.newDocument());
+    }
+
+    private TemplateDocument write(T object, TemplateDocument doc) {
+        for (Property property : properties) {
+            property.write(object, doc);
+        }
+        return doc;
+    }
+
+    public T read(@NonNull LuceneSearchHit hit) throws IOException {
+        return read(hit.getReader(), hit.getDocId());
+    }
+
+    /**
+     * Reads object of document
+     * @param reader top-level reader
+     * @param docId document ID of reader
+     * @return object, which fields neither stored nor doc-valued are left default
+     * @throws IOException
+     */
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public T read(@NonNull IndexReader reader, int docId) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        int leafDocId = docId - leaf.docBase;
+
+        final Object object = (Object) constructor.invokeExact();
+        for (Property property : docValueProperties) {
+            property.readDocValue(leaf.reader(), leafDocId, object);
+        }
+        if (!storedProperties.isEmpty()) {
+            leaf.reader().document(leafDocId, new StoredFieldVisitor() {
+                @Override
+                public Status needsField(FieldInfo fieldInfo) {
+                    return storedProperties.containsKey(fieldInfo.name) ? Status.YES : Status.NO;
+                }
+
+                @Override
+                public void stringField(FieldInfo fieldInfo, byte[] value) {
+                    storedProperties.get(fieldInfo.name).setString(object, new String(value, StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void binaryField(FieldInfo fieldInfo, byte[] value) {
+                    storedProperties.get(fieldInfo.name).setObject(object, value);
+                }
+
+                @Override
+                public void intField(FieldInfo fieldInfo, int value) {
+                    storedProperties.get(fieldInfo.name).setInt(object, value);
+                }
+
+                @Override
+                public void longField(FieldInfo fieldInfo, long value) {
+                    storedProperties.get(fieldInfo.name).setLong(object, value);
+                }
+
+                @Override
+                public void floatField(FieldInfo fieldInfo, float value) {
+                    storedProperties.get(fieldInfo.name).setFloat(object, value);
+                }
+
+                @Override
+                public void doubleField(FieldInfo fieldInfo, double value) {
+                    storedProperties.get(fieldInfo.name).setDouble(object, value);
+                }
+            });
+        }
+        return (T) object;
+    }
+
+
+    /**
+     * Object field bound to handles: primitive ones are accessed without boxing, others as objects
+     */
+    private static final class Property {
+        final String name;
+        final DocumentTemplate.Type type;
+        final LuceneFields.FieldOptions options;
+        final boolean primitive;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        Property(MethodHandles.Lookup lookup, Field field, LuceneField annotation) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                throw new IllegalArgumentException("Field " + field.getName() + " is static or final");
+            }
+            this.name = annotation.name().isEmpty() ? field.getName() : annotation.name();
+            this.type = typeOf(field, annotation);
+            this.options = type == DocumentTemplate.Type.BINARY ? LuceneFields.FieldOptions.STORE : LuceneFields.FieldOptions.builder()
+                    .index(annotation.index()).store(annotation.store()).docValue(annotation.docValue()).build();
+            this.primitive = field.getType().isPrimitive();
+
+            Class<?> valueType = primitive ? field.getType() : Object.class;
+            field.setAccessible(true);
+            try {
+                getter = lookup.unreflectGetter(field).asType(MethodType.methodType(valueType, Object.class));
+                setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, valueType));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Field " + field.getName() + " is not accessible", e);
+            }
+        }
+
+        private static DocumentTemplate.Type typeOf(Field field, LuceneField annotation) {
+            Class<?> type = field.getType();
+            if (type == String.class) return annotation.text() ? DocumentTemplate.Type.TEXT : DocumentTemplate.Type.KEYWORD;
+            if (type == boolean.class || type == Boolean.class) return DocumentTemplate.Type.BOOLEAN;
+            if (type == long.class || type == Long.class) return DocumentTemplate.Type.LONG;
+            if (type == int.class || type == Integer.class) return DocumentTemplate.Type.INTEGER;
+            if (type == double.class || type == Double.class) return DocumentTemplate.Type.DOUBLE;
+            if (type == float.class || type == Float.class) return DocumentTemplate.Type.FLOAT;
+            if (type == byte[].class) return DocumentTemplate.Type.BINARY;
+            throw new IllegalArgumentException("Field " + field.getName() + " has unsupported type " + type.getName());
+        }
+
+        void define(DocumentTemplate.Builder builder) {
+            switch (type) {
+                case KEYWORD: builder.addKeyword(name, options); break;
+                case TEXT: builder.addText(name, options); break;
+                case BOOLEAN: builder.addBoolean(name, options); break;
+                case LONG: builder.addLong(name, options); break;
+                case INTEGER: builder.addInteger(name, options); break;
+                case DOUBLE: builder.addDouble(name, options); break;
+                case FLOAT: builder.addFloat(name, options); break;
+                case BINARY: builder.addBinary(name); break;
+            }
+        }
+
+        void define(LuceneSchema.Builder builder) {
+            switch (type) {
+                case KEYWORD: builder.keyword(name, options); break;
+                case TEXT: builder.text(name, options); break;
+                case BOOLEAN: builder.bool(name, options); break;
+                case LONG: builder.longField(name, options); break;
+                case INTEGER: builder.intField(name, options); break;
+                case DOUBLE: builder.doubleField(name, options); break;
+                case FLOAT: builder.floatField(name, options); break;
+                case BINARY: builder.binary(name); break;
+            }
+        }
+
+        /**
+         * Integers are written to doc values as floats (see LuceneFields.Integer), so stored values are exact ones,
+         * booleans and binaries have no doc values
+         */
+        boolean readsDocValues() {
+            if (!options.isDocValue()) {
+                return false;
+            }
+            if (type == DocumentTemplate.Type.INTEGER) {
+                return !options.isStore();
+            }
+            return type != DocumentTemplate.Type.BOOLEAN && type != DocumentTemplate.Type.BINARY;
+        }
+
+        @SneakyThrows
+        void write(Object object, TemplateDocument doc) {
+            switch (type) {
+                case KEYWORD:
+                    doc.setKeyword(name, (String) (Object) getter.invokeExact(object));
+                    return;
+                case TEXT:
+                    doc.setText(name, (String) (Object) getter.invokeExact(object));
+                    return;
+                case BINARY:
+                    doc.setBinary(name, (byte[]) (Object) getter.invokeExact(object));
+                    return;
+                case BOOLEAN:
+                    if (primitive) {
+                        doc.setBoolean(name, (boolean) getter.invokeExact(object));
+                    } else {
+                        Object value = (Object) getter.invokeExact(object);
+                        if (value != null) doc.setBoolean(name, (Boolean) value);
+                    }
+                    return;
+                case LONG:
+                    if (primitive) {
+                        doc.setLong(name, (long) getter.invokeExact(object));
+                    } else {
+                        Object value = (Object) getter.invokeExact(object);
+                        if (value != null) doc.setLong(name, (Long) value);
+                    }
+                    return;
+                case INTEGER:
+                    if (primitive) {
+                        doc.setInteger(name, (int) getter.invokeExact(object));
+                    } else {
+                        Object value = (Object) getter.invokeExact(object);
+                        if (value != null) doc.setInteger(name, (Integer) value);
+                    }
+                    return;
+                case DOUBLE:
+                    if (primitive) {
+                        doc.setDouble(name, (double) getter.invokeExact(object));
+                    } else {
+                        Object value = (Object) getter.invokeExact(object);
+                        if (value != null) doc.setDouble(name, (Double) value);
+                    }
+                    return;
+                case FLOAT:
+                    if (primitive) {
+                        doc.setFloat(name, (float) getter.invokeExact(object));
+                    } else {
+                        Object value = (Object) getter.invokeExact(object);
+                        if (value != null) doc.setFloat(name, (Float) value);
+                    }
+                    return;
+            }
+        }
+
+        void readDocValue(LeafReader reader, int docId, Object object) throws IOException {
+            if (type == DocumentTemplate.Type.KEYWORD || type == DocumentTemplate.Type.TEXT) {
+                BinaryDocValues docValues = reader.getBinaryDocValues(name);
+                if (docValues != null && docValues.advanceExact(docId)) {
+                    BytesRef value = docValues.binaryValue();
+                    setObject(object, value.utf8ToString());
+                }
+                return;
+            }
+
+            NumericDocValues docValues = reader.getNumericDocValues(name);
+            if (docValues != null && docValues.advanceExact(docId)) {
+                long value = docValues.longValue();
+                switch (type) {
+                    case LONG: setLong(object, value); break;
+                    case DOUBLE: setDouble(object, Double.longBitsToDouble(value)); break;
+                    case FLOAT: setFloat(object, Float.intBitsToFloat((int) value)); break;
+                    case INTEGER: setInt(object, (int) Float.intBitsToFloat((int) value)); break;
+                    default: break;
+                }
+            }
+        }
+
+        void setString(Object object, String value) {
+            if (type == DocumentTemplate.Type.BOOLEAN) {
+                if (LuceneFields.Boolean.TRUE.equals(value)) setBoolean(object, true);
+                else if (LuceneFields.Boolean.FALSE.equals(value)) setBoolean(object, false);
+            } else {
+                setObject(object, value);
+            }
+        }
+
+        @SneakyThrows
+        void setObject(Object object, Object value) {
+            setter.invokeExact(object, value);
+        }
+
+        @SneakyThrows
+        void setBoolean(Object object, boolean value) {
+            if (primitive) setter.invokeExact(object, value);
+            else setter.invokeExact(object, (Object) value);
+        }
+
+        @SneakyThrows
+        void setLong(Object object, long value) {
+            if (primitive) setter.invokeExact(object, value);
+            else setter.invokeExact(object, (Object) value);
+        }
+
+        @SneakyThrows
+        void setInt(Object object, int value) {
+            if (primitive) setter.invokeExact(object, value);
+            else setter.invokeExact(object, (Object) value);
+        }
+
+        @SneakyThrows
+        void setDouble(Object object, double value) {
+            if (primitive) setter.invokeExact(object, value);
+            else setter.invokeExact(object, (Object) value);
+        }
+
+        @SneakyThrows
+        void setFloat(Object object, float value) {
+            if (primitive) setter.invokeExact(object, value);
+            else setter.invokeExact(object, (Object) value);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.sproutigy.libs.luceneplus.core.mapper;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps object field to document field, encoded as by {@link com.sproutigy.libs.luceneplus.core.LuceneFields}
+ * according to Java type: String (keyword or text), boolean, long, int, double, float (primitive or boxed) and byte[].
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface LuceneField {
+    /**
+     * Document field name, defaults to object field name
+     */
+    String name() default "";
+
+    boolean index() default true;
+
+    boolean store() default true;
+
+    boolean docValue() default false;
+
+    /**
+     * Whether String is analyzed text instead of keyword
+     */
+    boolean text() default false;
+}
@@ -6,6 +6,11 @@ import java.util.List;
 
 public abstract class AbstractLuceneSearchResults implements LuceneSearchResults {
 
+    @Override
+    public boolean isTotalApproximate() {
+        return false;
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
@@ -33,4 +33,10 @@ public final class LuceneSearch {
 
     @Getter
     private boolean doMaxScore;
+
+    /**
+     * Whether total number of hits should be counted even when collection of a sorted index could terminate early
+     */
+    @Getter
+    private boolean exactTotal;
 }
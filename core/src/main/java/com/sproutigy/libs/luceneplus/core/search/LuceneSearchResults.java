@@ -9,6 +9,11 @@ public interface LuceneSearchResults extends CloseableIterator<LuceneSearchHit>
     boolean hasTotal();
     long total();
 
+    /**
+     * @return true when total is a lower bound, because collection terminated early in sorted segments
+     */
+    boolean isTotalApproximate();
+
     boolean hasCount();
     int count();
 
@@ -17,6 +17,7 @@ public class MultiLuceneSearchResults extends AbstractLuceneSearchResults {
     private String[] names;
     @NonNull
     private LuceneSearch search;
+    private LuceneSearch[] searches;
 
     public MultiLuceneSearchResults(@NonNull LuceneIndices indices, @NonNull String[] names, @NonNull LuceneSearch search) {
         this.indices = indices;
@@ -26,6 +27,21 @@ public class MultiLuceneSearchResults extends AbstractLuceneSearchResults {
         calculateTotal = search.getNumHits() == null;
     }
 
+    /**
+     * Searches every index with its own search, e.g. with query rewritten for the index.
+     * Number of hits is taken from the first search.
+     * @param indices indices to search
+     * @param names names of indices in visiting order
+     * @param searches search for each name, at the same position
+     */
+    public MultiLuceneSearchResults(@NonNull LuceneIndices indices, @NonNull String[] names, @NonNull LuceneSearch[] searches) {
+        this(indices, names, searches.length > 0 ? searches[0] : LuceneSearch.MATCH_ALL);
+        if (searches.length != names.length) {
+            throw new IllegalArgumentException("Number of searches does not match number of indices names");
+        }
+        this.searches = searches;
+    }
+
     private int nameIndex = -1;
     private LuceneIndex currentIndex;
     private LuceneSearchResults currentSearchResults;
@@ -38,6 +54,7 @@ public class MultiLuceneSearchResults extends AbstractLuceneSearchResults {
     private boolean skipping = false;
     private int aggregatedCount = 0;
     private int aggregatedTotal = 0;
+    private boolean totalApproximate = false;
 
     @Override
     public boolean hasTotal() {
@@ -53,6 +70,11 @@ public class MultiLuceneSearchResults extends AbstractLuceneSearchResults {
         return total;
     }
 
+    @Override
+    public boolean isTotalApproximate() {
+        return totalApproximate;
+    }
+
     @Override
     public boolean hasCount() {
         return count != -1;
@@ -109,10 +131,17 @@ public class MultiLuceneSearchResults extends AbstractLuceneSearchResults {
                     continue;
                 }
 
+                LuceneSearch indexSearch = searches != null ? searches[nameIndex] : search;
+                if (!indices.mayMatch(name, indexSearch.getQuery())) {
+                    //index surely does not contain matching documents, skip it without acquiring
+                    continue;
+                }
+
                 currentIndex = indices.acquire(name);
-                currentSearchResults = currentIndex.search(search);
+                currentSearchResults = currentIndex.search(indexSearch);
                 if (calculateTotal) {
                     aggregatedTotal += currentSearchResults.total();
+                    totalApproximate |= currentSearchResults.isTotalApproximate();
                 }
             }
 
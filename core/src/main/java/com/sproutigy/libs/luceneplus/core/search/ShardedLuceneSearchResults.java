@@ -0,0 +1,131 @@
+package com.sproutigy.libs.luceneplus.core.search;
+
+import com.sproutigy.libs.luceneplus.core.Reference;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Top hits merged from results of all shards, which searchers are kept until results are closed
+ */
+public class ShardedLuceneSearchResults extends AbstractLuceneSearchResults {
+    private SingleLuceneSearchResults[] shardResults;
+
+    @Getter
+    private final TopDocs topDocs;
+
+    private final boolean totalApproximate;
+
+    private LuceneSearchHitImpl current;
+
+    private int i = -1;
+
+    public ShardedLuceneSearchResults(@NonNull SingleLuceneSearchResults[] shardResults, Sort sort, int numHits) {
+        this.shardResults = shardResults;
+
+        boolean totalApproximate = false;
+        for (SingleLuceneSearchResults results : shardResults) {
+            totalApproximate |= results.isTotalApproximate();
+        }
+        this.totalApproximate = totalApproximate;
+
+        if (sort != null) {
+            TopFieldDocs[] shardDocs = new TopFieldDocs[shardResults.length];
+            for (int i = 0; i < shardResults.length; i++) {
+                shardDocs[i] = (TopFieldDocs) shardResults[i].getTopDocs();
+            }
+            topDocs = TopDocs.merge(sort, numHits, shardDocs);
+        } else {
+            TopDocs[] shardDocs = new TopDocs[shardResults.length];
+            for (int i = 0; i < shardResults.length; i++) {
+                shardDocs[i] = shardResults[i].getTopDocs();
+            }
+            topDocs = TopDocs.merge(numHits, shardDocs);
+        }
+    }
+
+    @Override
+    public boolean hasTotal() {
+        return true;
+    }
+
+    @Override
+    public long total() {
+        return topDocs.totalHits;
+    }
+
+    @Override
+    public boolean isTotalApproximate() {
+        return totalApproximate;
+    }
+
+    @Override
+    public boolean hasCount() {
+        return true;
+    }
+
+    @Override
+    public int count() {
+        return topDocs.scoreDocs.length;
+    }
+
+    @SneakyThrows
+    @Override
+    public boolean hasNext() {
+        if (i < topDocs.scoreDocs.length - 1) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    @SneakyThrows
+    @Override
+    public LuceneSearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        if (current != null) {
+            current.unlinkSearcher();
+        }
+
+        i++;
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        SingleLuceneSearchResults shard = shardResults[scoreDoc.shardIndex];
+        current = new LuceneSearchHitImpl(shard.getIndex().getName(), shard.getSearcher(), scoreDoc.doc, scoreDoc.score);
+        return current;
+    }
+
+    @SneakyThrows
+    @Override
+    public void remove() {
+        SingleLuceneSearchResults shard = shardResults[topDocs.scoreDocs[i].shardIndex];
+        try (Reference<IndexWriter> writer = shard.getIndex().provideWriter()) {
+            writer.use().tryDeleteDocument(current.getReader(), current.getDocId());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.unlinkSearcher();
+            current = null;
+        }
+
+        if (shardResults != null) {
+            for (SingleLuceneSearchResults results : shardResults) {
+                results.close();
+            }
+            shardResults = null;
+        }
+    }
+}
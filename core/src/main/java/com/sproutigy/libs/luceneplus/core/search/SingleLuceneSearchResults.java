@@ -2,6 +2,7 @@ package com.sproutigy.libs.luceneplus.core.search;
 
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
 import com.sproutigy.libs.luceneplus.core.Reference;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -16,15 +17,22 @@ import java.util.NoSuchElementException;
 
 @RequiredArgsConstructor
 public class SingleLuceneSearchResults extends AbstractLuceneSearchResults {
+    public SingleLuceneSearchResults(@NonNull TopDocs topDocs, @NonNull IndexSearcher searcher, @NonNull LuceneIndex index, boolean totalApproximate) {
+        this(topDocs, searcher, index);
+        this.totalApproximate = totalApproximate;
+    }
+
     @NonNull @Getter
     private TopDocs topDocs;
 
-    @NonNull
+    @NonNull @Getter(AccessLevel.PACKAGE)
     private IndexSearcher searcher;
 
-    @NonNull
+    @NonNull @Getter(AccessLevel.PACKAGE)
     private LuceneIndex index;
 
+    private boolean totalApproximate;
+
     private LuceneSearchHitImpl current;
 
     private int i = -1;
@@ -39,6 +47,11 @@ public class SingleLuceneSearchResults extends AbstractLuceneSearchResults {
         return topDocs.totalHits;
     }
 
+    @Override
+    public boolean isTotalApproximate() {
+        return totalApproximate;
+    }
+
     @Override
     public boolean hasCount() {
         return true;
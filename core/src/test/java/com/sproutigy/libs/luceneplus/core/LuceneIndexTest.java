@@ -1,21 +1,50 @@
 package com.sproutigy.libs.luceneplus.core;
 
+import com.sproutigy.libs.luceneplus.core.bulk.BulkIndexer;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkListener;
+import com.sproutigy.libs.luceneplus.core.bulk.BulkOptions;
+import com.sproutigy.libs.luceneplus.core.bulk.OfflineBuildListener;
+import com.sproutigy.libs.luceneplus.core.bulk.OfflineBuildOptions;
+import com.sproutigy.libs.luceneplus.core.bulk.OfflineIndexBuilder;
+import com.sproutigy.libs.luceneplus.core.mapper.DocumentMapper;
+import com.sproutigy.libs.luceneplus.core.mapper.LuceneField;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchHit;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SerialMergeScheduler;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class LuceneIndexTest {
     @Test
@@ -64,4 +93,464 @@ public class LuceneIndexTest {
         assertEquals(1L, (long)LuceneFields.Long.get(hits.get(1).getField("id")));
         assertEquals(3L, (long)LuceneFields.Long.get(hits.get(2).getField("id")));
     }
+
+    @Test
+    public void testIndexSortEarlyTermination() throws IOException {
+        Sort sort = new Sort(new SortField("time", SortField.Type.LONG, true));
+        LuceneIndex index = new LuceneIndex();
+        index.setIndexSort(sort);
+        try (Reference<IndexWriter> writer = index.provideWriter()) {
+            for (long time = 0; time < 100; time++) {
+                Document doc = new Document();
+                LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE);
+                writer.use().addDocument(doc);
+            }
+        }
+        assertTrue(index.isSortedBy(sort));
+
+        LuceneSearchResults results = index.search(LuceneSearch.builder().sort(sort).numHits(5).build());
+        assertTrue(results.isTotalApproximate());
+        List<LuceneSearchHit> hits = results.toList();
+        assertEquals(5, hits.size());
+        assertEquals(99L, (long)LuceneFields.Long.get(hits.get(0).getField("time")));
+        assertEquals(95L, (long)LuceneFields.Long.get(hits.get(4).getField("time")));
+
+        results = index.search(LuceneSearch.builder().sort(sort).numHits(5).exactTotal(true).build());
+        assertFalse(results.isTotalApproximate());
+        assertEquals(100, results.total());
+        results.close();
+    }
+
+    @Test
+    public void testDocumentTemplate() throws IOException {
+        DocumentTemplate template = DocumentTemplate.builder()
+                .addKeyword("id", LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE)
+                .addText("body", LuceneFields.FieldOptions.INDEX)
+                .addLong("time", LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE)
+                .addDouble("price", LuceneFields.FieldOptions.INDEX_DOCVALUE)
+                .addBoolean("active", LuceneFields.FieldOptions.STORE_INDEX)
+                .build();
+
+        LuceneIndex index = new LuceneIndex();
+        try (Reference<IndexWriter> writer = index.provideWriter()) {
+            for (int i = 0; i < 100; i++) {
+                TemplateDocument doc = template.document();
+                assertTrue(doc == template.document());
+                doc.setKeyword("id", "id" + i).setLong("time", i).setDouble("price", i / 2.0).setBoolean("active", i % 2 == 0);
+                if (i % 10 == 0) {
+                    doc.setText("body", "round number " + i);
+                }
+                writer.use().addDocument(doc);
+            }
+        }
+
+        assertEquals(10, index.search(LuceneSearch.builder().query(new TermQuery(new Term("body", "round"))).build()).total());
+        assertEquals(50, index.search(LuceneSearch.builder().query(new TermQuery(new Term("active", LuceneFields.Boolean.TRUE))).build()).total());
+        assertEquals(11, index.search(LuceneSearch.builder().query(LongPoint.newRangeQuery("time", 10, 20)).build()).total());
+        assertEquals(5, index.search(LuceneSearch.builder().query(DoublePoint.newRangeQuery("price", 1.0, 3.0)).build()).total());
+
+        Sort sort = new Sort(new SortField("time", SortField.Type.LONG, true));
+        LuceneSearchResults results = index.search(LuceneSearch.builder().query(new TermQuery(new Term("id", "id42"))).sort(sort).build());
+        LuceneSearchHit hit = results.next();
+        assertEquals("id42", LuceneFields.Keyword.get(hit.getDocument(), "id"));
+        assertEquals(42L, (long) LuceneFields.Long.get(hit.getDocument(), "time"));
+        assertTrue(LuceneFields.Boolean.get(hit.getDocument(), "active"));
+        assertEquals(null, hit.getDocument().get("body"));
+        results.close();
+    }
+
+    @Test
+    public void testSchema() throws IOException {
+        LuceneSchema schema = LuceneSchema.builder()
+                .keyword("id", LuceneFields.FieldOptions.STORE_INDEX)
+                .longField("time", LuceneFields.FieldOptions.INDEX_DOCVALUE)
+                .doubleField("score", LuceneFields.FieldOptions.DOCVALUE)
+                .intField("count", LuceneFields.FieldOptions.INDEX_DOCVALUE)
+                .required("id")
+                .strict()
+                .build();
+        LuceneIndex index = new LuceneIndex();
+        index.setSchema(schema);
+
+        for (int i = -10; i < 10; i++) {
+            index.addDocument(schema.template().document().setKeyword("id", "id" + i).setLong("time", i).setDouble("score", i / 4.0).setInteger("count", (1 << 24) + i));
+        }
+        Document doc = new Document();
+        LuceneFields.Keyword.add(doc, "id", "other", LuceneFields.FieldOptions.STORE_INDEX);
+        LuceneFields.Long.add(doc, "time", 100L, LuceneFields.FieldOptions.INDEX_DOCVALUE);
+        index.addDocument(doc);
+
+        assertTrue(schema.range("time", 0, null) instanceof IndexOrDocValuesQuery);
+        assertEquals(11, index.search(LuceneSearch.builder().query(schema.range("time", 0, null)).build()).total());
+        assertEquals(1, index.search(LuceneSearch.builder().query(schema.exact("id", "id5")).build()).total());
+        //doc values of negative doubles are in reversed order
+        assertEquals(5, index.search(LuceneSearch.builder().query(schema.range("score", -1.0, 0.0)).build()).total());
+        assertEquals(4, index.search(LuceneSearch.builder().query(schema.range("score", -2.5, -1.75)).build()).total());
+        assertEquals(9, index.search(LuceneSearch.builder().query(schema.range("score", -1.0, 1.0)).build()).total());
+        //integers above 2^24 are not exact as float doc values, so only points are used
+        assertFalse(schema.range("count", 0, null) instanceof IndexOrDocValuesQuery);
+        assertEquals(1, index.search(LuceneSearch.builder().query(schema.range("count", (1 << 24) + 3, (1 << 24) + 3)).build()).total());
+
+        LuceneSearchResults results = index.search(LuceneSearch.builder().query(schema.range("time", null, -9)).sort(new Sort(schema.sortField("time", true))).build());
+        assertEquals("id-9", schema.getValue(results.next().getDocument(), "id"));
+        results.close();
+
+        Document missing = new Document();
+        LuceneFields.Long.add(missing, "time", 1L, LuceneFields.FieldOptions.INDEX);
+        Document undefined = new Document();
+        LuceneFields.Keyword.add(undefined, "id", "x", LuceneFields.FieldOptions.STORE_INDEX);
+        LuceneFields.Keyword.add(undefined, "name", "x", LuceneFields.FieldOptions.STORE_INDEX);
+        Document mistyped = new Document();
+        LuceneFields.Keyword.add(mistyped, "id", "x", LuceneFields.FieldOptions.STORE_INDEX);
+        LuceneFields.Keyword.add(mistyped, "time", "x", LuceneFields.FieldOptions.INDEX);
+        for (Document invalid : Arrays.asList(missing, undefined, mistyped)) {
+            try {
+                index.addDocument(invalid);
+                assertTrue(false);
+            } catch (IllegalArgumentException ignore) { }
+        }
+        assertEquals(21, index.search(LuceneSearch.builder().build()).total());
+    }
+
+    public static class Event {
+        @LuceneField
+        private String id;
+        @LuceneField(docValue = true)
+        private long time;
+        @LuceneField(text = true, store = false)
+        private String body;
+        @LuceneField(index = false, store = false, docValue = true)
+        private Double price;
+        @LuceneField(name = "is_active")
+        private boolean active;
+        @LuceneField(index = false)
+        private Integer count;
+    }
+
+    @Test
+    public void testDocumentMapper() throws IOException {
+        DocumentMapper<Event> mapper = DocumentMapper.of(Event.class);
+        assertTrue(mapper == DocumentMapper.of(Event.class));
+        LuceneIndex index = new LuceneIndex();
+        index.setSchema(mapper.toSchema());
+        for (int i = 0; i < 10; i++) {
+            Event event = new Event();
+            event.id = "e" + i;
+            event.time = 1000 + i;
+            event.body = "event number " + i;
+            event.price = i % 2 == 0 ? i * 1.5 : null;
+            event.active = i % 3 == 0;
+            event.count = i;
+            index.addDocument(mapper.toDocument(event));
+        }
+
+        LuceneSearch search = LuceneSearch.builder().query(new TermQuery(new Term("body", "number"))).sort(new Sort(new SortField("time", SortField.Type.LONG, true))).build();
+        try (LuceneSearchResults results = index.search(search)) {
+            Event last = mapper.read(results.next());
+            assertEquals("e9", last.id);
+            assertEquals(1009, last.time);
+            assertEquals(null, last.body);
+            assertEquals(null, last.price);
+            assertTrue(last.active);
+            assertEquals(9, (int) last.count);
+
+            Event previous = mapper.read(results.next());
+            assertEquals(12.0, previous.price, 0);
+            assertFalse(previous.active);
+        }
+        assertEquals(4, index.search(LuceneSearch.builder().query(new TermQuery(new Term("is_active", LuceneFields.Boolean.TRUE))).build()).total());
+    }
+
+    @Test
+    public void testLiveVersionMap() throws IOException {
+        LuceneIndex index = new LuceneIndex();
+        index.setIdField("id", true);
+        Document legacy = new Document();
+        LuceneFields.Keyword.add(legacy, "id", "a", LuceneFields.FieldOptions.STORE_INDEX);
+        index.addDocument(legacy);
+        assertEquals(1, index.getVersion("a"));
+        assertEquals(LiveVersionMap.NOT_FOUND, index.getVersion("b"));
+
+        Document doc = new Document();
+        LuceneFields.Keyword.add(doc, "id", "a", LuceneFields.FieldOptions.STORE_INDEX);
+        LuceneFields.Keyword.add(doc, "name", "John", LuceneFields.FieldOptions.STORE_INDEX);
+        assertEquals(2, index.putDocument("a", doc, 1));
+        try {
+            index.putDocument("a", doc, 1);
+            fail();
+        } catch (VersionConflictException e) {
+            assertEquals(2, e.getCurrentVersion());
+        }
+        try {
+            index.putDocument("b", doc);
+            fail();
+        } catch (IllegalArgumentException ignore) { }
+        assertEquals("John", index.get("a").get("name"));
+        assertEquals(1, index.search(LuceneSearch.builder().query(new TermQuery(new Term("id", "a"))).build()).total());
+
+        Document other = new Document();
+        LuceneFields.Keyword.add(other, "id", "b", LuceneFields.FieldOptions.STORE_INDEX);
+        assertEquals(3, index.putDocument("b", other, LiveVersionMap.NOT_FOUND));
+        assertTrue(index.deleteDocument("b", 3));
+        assertFalse(index.deleteDocument("b", LiveVersionMap.MATCH_ANY));
+        assertEquals(null, index.get("b"));
+        assertEquals(5, index.putDocument("a", doc));
+
+        //recreated ID never gets version of the deleted document
+        assertEquals(6, index.putDocument("b", other, LiveVersionMap.NOT_FOUND));
+        try {
+            index.putDocument("b", other, 3);
+            fail();
+        } catch (VersionConflictException ignore) { }
+
+        //plain write of ID not refreshed yet is replaced, not duplicated
+        index.addDocument(other);
+        index.putDocument("b", other);
+        assertEquals(1, index.search(LuceneSearch.builder().query(new TermQuery(new Term("id", "b"))).build()).total());
+        index.commit();
+        IndexWriter writer = index.acquireWriter();
+        try {
+            Map<String, String> commitData = new HashMap<>();
+            for (Map.Entry<String, String> entry : writer.getLiveCommitData()) {
+                commitData.put(entry.getKey(), entry.getValue());
+            }
+            assertEquals("7", commitData.get(LiveVersionMap.MAX_VERSION_KEY));
+        } finally {
+            index.release(writer);
+        }
+
+        //entries are served until refreshed searcher sees them
+        LiveVersionMap map = new LiveVersionMap(true);
+        map.put(new BytesRef("c"), new LiveVersionMap.Entry(1, 0, doc, false));
+        map.beforeRefresh();
+        assertEquals(1, map.get(new BytesRef("c")).getVersion());
+        map.afterRefresh(true);
+        assertEquals(null, map.get(new BytesRef("c")));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testWriteThrottle() throws IOException {
+        final AtomicInteger throttled = new AtomicInteger();
+        LuceneIndex index = new LuceneIndex();
+        index.setWriteThrottle(new WriteThrottle() {
+            @Override
+            public void await(LuceneIndex index) {
+                throttled.incrementAndGet();
+            }
+        });
+        Document doc = new Document();
+        LuceneFields.Keyword.add(doc, "name", "John", LuceneFields.FieldOptions.STORE_INDEX);
+        index.addDocument(doc);
+        index.updateDocument(new Term("name", "John"), doc);
+        assertEquals(2, throttled.get());
+
+        //flushes and commits free memory, so they are not throttled
+        index.flush();
+        index.commit();
+        index.close();
+        assertEquals(2, throttled.get());
+    }
+
+    @Test
+    public void testWriterProfileSwitch() throws IOException {
+        LuceneIndex index = new LuceneIndex();
+        index.setAutoCommit(false);
+        index.setWriterProfile(WriterProfile.BULK);
+        IndexWriter writer = index.acquireWriter();
+        assertEquals(256, writer.getConfig().getRAMBufferSizeMB(), 0);
+        assertFalse(writer.getConfig().getUseCompoundFile());
+        Document doc = new Document();
+        LuceneFields.Keyword.add(doc, "name", "John", LuceneFields.FieldOptions.STORE_INDEX);
+        writer.addDocument(doc);
+
+        //acquired writer is closed on release
+        index.setWriterProfile(WriterProfile.NRT);
+        assertFalse(index.reopenWriter());
+        assertTrue(writer.isOpen());
+        index.release(writer);
+        assertFalse(writer.isOpen());
+
+        try (Reference<IndexWriter> reopened = index.provideWriter()) {
+            assertEquals(16, reopened.use().getConfig().getRAMBufferSizeMB(), 0);
+            assertTrue(reopened.use().getConfig().getUseCompoundFile());
+        }
+        assertEquals(1, index.search(LuceneSearch.builder().build()).total());
+        assertTrue(index.reopenWriter());
+
+        //custom merge scheduler is kept by profile
+        LuceneIndex custom = new LuceneIndex(new Supplier<Directory>() {
+            @Override
+            public Directory get() {
+                return new RAMDirectory();
+            }
+        }, new IndexWriterConfigSupplier() {
+            @Override
+            public IndexWriterConfig get(Analyzer analyzer) {
+                return new IndexWriterConfig(analyzer).setMergeScheduler(new SerialMergeScheduler());
+            }
+        });
+        custom.setWriterProfile(WriterProfile.BULK);
+        custom.open();
+        try (Reference<IndexWriter> customWriter = custom.provideWriter()) {
+            assertTrue(customWriter.use().getConfig().getMergeScheduler() instanceof SerialMergeScheduler);
+        }
+        custom.close();
+    }
+
+    @Test
+    public void testBulk() throws IOException {
+        LuceneIndex index = new LuceneIndex();
+        final AtomicInteger written = new AtomicInteger();
+        BulkOptions options = BulkOptions.builder().batchSize(10).concurrency(2).listener(new BulkListener() {
+            @Override
+            public void onBatch(int batch, int size) {
+                written.addAndGet(size);
+            }
+
+            @Override
+            public void onFailed(int batch, int size, Throwable error) { }
+        }).build();
+
+        try (BulkIndexer bulk = index.bulk(options)) {
+            for (long id = 0; id < 95; id++) {
+                Document doc = new Document();
+                LuceneFields.Keyword.add(doc, "id", Long.toString(id), LuceneFields.FieldOptions.STORE_INDEX);
+                bulk.addDocument(doc);
+            }
+            bulk.flush();
+            assertEquals(95, bulk.getIndexed());
+            assertEquals(10, bulk.getBatches());
+        }
+        assertEquals(95, written.get());
+        assertEquals(95, index.search(LuceneSearch.MATCH_ALL).count());
+
+        BulkIndexer bulk = index.bulk(BulkOptions.builder().batchSize(3).concurrency(1).build());
+        for (long id = 0; id < 5; id++) {
+            if (id == 3) {
+                Document immense = new Document();
+                LuceneFields.Keyword.add(immense, "id", new String(new char[40000]).replace('\0', 'x'), LuceneFields.FieldOptions.INDEX);
+                bulk.addDocument(immense);
+            }
+            Document doc = new Document();
+            LuceneFields.Keyword.add(doc, "id", Long.toString(id), LuceneFields.FieldOptions.STORE_INDEX);
+            LuceneFields.Keyword.add(doc, "updated", "T", LuceneFields.FieldOptions.INDEX);
+            bulk.updateDocument(new Term("id", Long.toString(id)), doc);
+        }
+        bulk.close();
+        assertEquals(3, bulk.getIndexed());
+        assertEquals(3, bulk.getFailed());
+        assertEquals(Collections.singleton(2), bulk.getFailures().keySet());
+        assertEquals(95, index.search(LuceneSearch.MATCH_ALL).count());
+        assertEquals(3, index.search(LuceneSearch.builder().query(new TermQuery(new Term("updated", "T"))).build()).count());
+    }
+
+    @Test
+    public void testOfflineBuild() throws IOException {
+        Path tempPath = Files.createTempDirectory("luceneplus-test");
+        LuceneIndex index = new LuceneIndex();
+        index.setIndexSort(new Sort(new SortField("id", SortField.Type.LONG)));
+        final List<OfflineIndexBuilder.Phase> phases = new ArrayList<>();
+        final List<Long> progress = new ArrayList<>();
+        OfflineBuildOptions options = OfflineBuildOptions.builder().partitions(3).ramBufferMB(48).tempPath(tempPath).optimize().progressInterval(25).listener(new OfflineBuildListener() {
+            @Override
+            public void onPhase(OfflineIndexBuilder.Phase phase, long documents) {
+                phases.add(phase);
+            }
+
+            @Override
+            public synchronized void onProgress(long documents) {
+                progress.add(documents);
+            }
+        }).build();
+        assertEquals(16, options.getPartitionRamBufferMB(), 0);
+
+        List<Document> docs = new ArrayList<>();
+        for (long id = 0; id < 100; id++) {
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "id", id, LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE);
+            docs.add(doc);
+        }
+
+        try (OfflineIndexBuilder builder = index.buildOffline(options)) {
+            builder.addDocuments(docs);
+            builder.addDocument(docs.get(0));
+            assertEquals(101, builder.getDocuments());
+            assertEquals(4, progress.size());
+            builder.finish();
+        }
+        assertEquals(Arrays.asList(OfflineIndexBuilder.Phase.MERGING, OfflineIndexBuilder.Phase.OPTIMIZING, OfflineIndexBuilder.Phase.DONE), phases);
+        assertEquals(101, index.search(LuceneSearch.MATCH_ALL).count());
+        assertEquals(1, SegmentInfos.readLatestCommit(index.getDirectory()).size());
+
+        //temporary indices are removed, also when build is discarded
+        try (OfflineIndexBuilder builder = index.buildOffline(options)) {
+            builder.addDocuments(docs);
+        }
+        assertEquals(101, index.search(LuceneSearch.MATCH_ALL).count());
+
+        //documents of build failed after adding partitions are deleted from target, its other changes are kept
+        OfflineBuildOptions failing = OfflineBuildOptions.builder().partitions(2).tempPath(tempPath).optimize().listener(new OfflineBuildListener() {
+            @Override
+            public void onPhase(OfflineIndexBuilder.Phase phase, long documents) {
+                if (phase == OfflineIndexBuilder.Phase.OPTIMIZING) {
+                    throw new IllegalStateException("Optimizing failed");
+                }
+            }
+
+            @Override
+            public void onProgress(long documents) {
+            }
+        }).build();
+        index.addDocument(docs.get(1));
+        try (OfflineIndexBuilder builder = index.buildOffline(failing)) {
+            builder.addDocuments(docs);
+            try {
+                builder.finish();
+                fail();
+            } catch (IllegalStateException ignore) { }
+            assertEquals(OfflineIndexBuilder.Phase.ABORTED, builder.getPhase());
+        }
+        index.commit();
+        assertEquals(102, index.search(LuceneSearch.MATCH_ALL).count());
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempPath)) {
+            assertFalse(stream.iterator().hasNext());
+        }
+        Files.delete(tempPath);
+    }
+
+    @Test
+    public void testShardedIndex() throws IOException {
+        ShardedLuceneIndex index = new ShardedLuceneIndex("id", new LuceneIndex(), new LuceneIndex(), new LuceneIndex());
+        List<Document> docs = new ArrayList<>();
+        for (long i = 0; i < 30; i++) {
+            Document doc = new Document();
+            LuceneFields.Keyword.add(doc, "id", "doc-" + i, LuceneFields.FieldOptions.STORE_INDEX);
+            LuceneFields.Long.add(doc, "val", i, LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE);
+            docs.add(doc);
+        }
+        index.addDocuments(docs);
+        for (LuceneIndex shard : index.getShards()) {
+            assertTrue(shard.numDocs() > 0);
+        }
+
+        Document updated = new Document();
+        LuceneFields.Keyword.add(updated, "id", "doc-5", LuceneFields.FieldOptions.STORE_INDEX);
+        LuceneFields.Long.add(updated, "val", 100L, LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE);
+        index.updateDocument(new Term("id", "doc-5"), updated);
+        index.commit();
+
+        LuceneSearchResults results = index.search(LuceneSearch.builder().numHits(3).sort(new Sort(new SortField("val", SortField.Type.LONG, true))).build());
+        assertEquals(30, results.total());
+        List<LuceneSearchHit> hits = results.toList();
+        assertEquals(3, hits.size());
+        assertEquals(100L, (long)LuceneFields.Long.get(hits.get(0).getField("val")));
+        assertEquals(29L, (long)LuceneFields.Long.get(hits.get(1).getField("val")));
+        assertEquals(28L, (long)LuceneFields.Long.get(hits.get(2).getField("val")));
+
+        index.optimize();
+        assertEquals(1, index.search(LuceneSearch.builder().query(new TermQuery(new Term("id", "doc-5"))).build()).count());
+        index.close();
+    }
 }
@@ -63,6 +63,60 @@ public class LuceneIndexRemovalTest {
     }
 
 
+    @Test
+    public void testIndexDeleteOfOpenIndex() throws IOException, InterruptedException {
+        preAssertions();
+
+        LuceneIndex index1 = indices.acquire("test1");
+        Document doc = new Document();
+        LuceneFields.Text.add(doc, "text", "Not committed", LuceneFields.FieldOptions.STORE_INDEX);
+        index1.acquireWriter().addDocument(doc);
+        assertTrue(indices.isOpen("test1"));
+
+        indices.delete("test1");
+
+        assertFalse(index1.isOpen());
+
+        assertFalse(indices.exists("test1", true));
+        assertFalse(Files.exists(root.resolve("test1")));
+        ((FSLuceneIndices) indices).awaitDeletion("test1");
+
+        //trash is emptied in background
+        Path trash = root.resolve(FSLuceneIndices.TRASH_DIRECTORY_NAME);
+        for (int i = 0; i < 100 && trash.toFile().list().length > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, trash.toFile().list().length);
+
+        postAssertions();
+    }
+
+
+    @Test
+    public void testTrashLeftoversPurge() throws IOException, InterruptedException {
+        indices.close();
+        Path leftover = root.resolve(FSLuceneIndices.TRASH_DIRECTORY_NAME).resolve("test3.1");
+        Files.createDirectories(leftover);
+        Files.write(leftover.resolve("segments_1"), new byte[] { 1 });
+        indices = new FSLuceneIndices(root);
+        indices.setAutoClosePolicy(AutoClosePolicy.INSTANTLY);
+
+        //purge started by listing runs along with deletion moving index into trash
+        preAssertions();
+        indices.names();
+        indices.delete("test1");
+        ((FSLuceneIndices) indices).awaitDeletion("test1");
+
+        Path trash = root.resolve(FSLuceneIndices.TRASH_DIRECTORY_NAME);
+        for (int i = 0; i < 100 && trash.toFile().list().length > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, trash.toFile().list().length);
+
+        postAssertions();
+    }
+
+
     @Test
     public void testIndexDeleteByDirectoryRemoval() throws IOException, InterruptedException {
         preAssertions();
@@ -4,6 +4,7 @@ import com.sproutigy.libs.luceneplus.core.CloseableIterator;
 import com.sproutigy.libs.luceneplus.core.LuceneFields;
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
 import com.sproutigy.libs.luceneplus.core.Reference;
+import com.sproutigy.libs.luceneplus.core.WriterProfile;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchHit;
 import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
@@ -104,6 +105,63 @@ public class LuceneIndicesTest {
         assertFalse(indices.isOpen("a"));
     }
 
+    @Test
+    public void testIndexingMemoryPolicy() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        indices.setIndexingMemoryPolicy(IndexingMemoryPolicy.builder().maxBytes(160 * 1024).checkInterval(1, TimeUnit.HOURS).build());
+        try (Reference<LuceneIndex> index = indices.provide("big")) {
+            try (Reference<IndexWriter> writer = index.use().provideWriter()) {
+                for (int i = 0; i < 2000; i++) {
+                    Document doc = new Document();
+                    LuceneFields.Keyword.add(doc, "id", "id" + i, LuceneFields.FieldOptions.INDEX);
+                    writer.use().addDocument(doc);
+                }
+            }
+        }
+        fillIndex(indices, "small");
+
+        LuceneIndex big = indices.acquire("big");
+        LuceneIndex small = indices.acquire("small");
+        try {
+            long smallBytes = small.ramBytesUsed();
+            assertTrue(big.ramBytesUsed() + smallBytes > 160 * 1024);
+            assertTrue(smallBytes > 0);
+
+            IndexingMemoryController controller = ((AbstractLuceneIndices) indices).getIndexingMemoryController();
+            controller.check();
+            assertEquals(1, controller.getFlushes());
+            assertTrue(controller.getRamBytesUsed() <= 160 * 1024);
+            assertFalse(controller.isThrottled());
+            assertEquals(smallBytes, small.ramBytesUsed());
+            assertEquals(2000, big.search(LuceneSearch.builder().build()).total());
+        } finally {
+            indices.release(big);
+            indices.release(small);
+        }
+        indices.close();
+    }
+
+    @Test
+    public void testWriterProfiles() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        indices.setWriterProfile("", WriterProfile.NRT);
+        indices.setWriterProfile("backfill-", WriterProfile.BULK);
+        fillIndex(indices, "backfill-2018");
+        fillIndex(indices, "live");
+        assertEquals(WriterProfile.BULK, indices.getWriterProfile("backfill-2018"));
+        assertEquals(WriterProfile.NRT, indices.getWriterProfile("live"));
+
+        indices.setWriterProfile("backfill-", null);
+        try (Reference<LuceneIndex> index = indices.provide("backfill-2018")) {
+            assertEquals(WriterProfile.NRT, index.use().getWriterProfile());
+            try (Reference<IndexWriter> writer = index.use().provideWriter()) {
+                assertEquals(16, writer.use().getConfig().getRAMBufferSizeMB(), 0);
+            }
+            assertEquals(1, index.use().search(LuceneSearch.builder().build()).total());
+        }
+        indices.close();
+    }
+
     private void fillIndex(LuceneIndices indices, String indexName) throws IOException {
         try (Reference<LuceneIndex> index = indices.provide(indexName)) {
             try (Reference<IndexWriter> writer = index.use().provideWriter()) {
@@ -1,15 +1,29 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
+import com.sproutigy.libs.luceneplus.core.IdFilters;
 import com.sproutigy.libs.luceneplus.core.LuceneFields;
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
+import com.sproutigy.libs.luceneplus.core.LuceneIndexMetadata;
 import com.sproutigy.libs.luceneplus.core.Reference;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchHit;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.sproutigy.libs.luceneplus.core.indices.FSLuceneIndices.deleteDirectoryIfExists;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -41,4 +55,221 @@ public class LucenePersistentIndicesTest {
             deleteDirectoryIfExists(root);
         }
     }
+
+    @Test
+    public void testPreload() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        deleteDirectoryIfExists(root);
+
+        LuceneIndices indices = new FSLuceneIndices(root);
+        try {
+            for (String name : new String[] { "test1", "test2", "other" }) {
+                try (Reference<LuceneIndex> index = indices.provide(name)) {
+                    Document doc = new Document();
+                    LuceneFields.Text.add(doc, "text", "Hello " + name, LuceneFields.FieldOptions.STORE_INDEX);
+                    index.use().addDocument(doc);
+                }
+            }
+            indices.close();
+
+            indices = new FSLuceneIndices(root);
+            assertFalse(indices.isOpen("test1"));
+
+            IndicesPreload preload = indices.preload("test", PreloadOptions.builder().parallelism(2).warm().build());
+            assertTrue(preload.await(10, TimeUnit.SECONDS));
+            assertTrue(preload.isSuccessful());
+            assertEquals(2, preload.getTotal());
+            assertEquals(2, preload.getLoaded());
+
+            assertTrue(indices.isOpen("test1"));
+            assertTrue(indices.isOpen("test2"));
+            assertFalse(indices.isOpen("other"));
+
+            IndicesPreload cancelled = indices.preload("other", PreloadOptions.builder().build());
+            cancelled.cancel();
+            assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+            assertTrue(cancelled.isCancelled());
+            assertFalse(cancelled.isSuccessful());
+
+            //missing index is skipped, not created
+            IndicesPreload missing = indices.preload(Arrays.asList("test1", "missing"), PreloadOptions.OPEN);
+            assertTrue(missing.await(10, TimeUnit.SECONDS));
+            assertTrue(missing.isSuccessful());
+            assertEquals(1, missing.getSkipped());
+            assertEquals(1.0, missing.getProgress(), 0);
+            assertFalse(Files.exists(root.resolve("missing")));
+        } finally {
+            indices.close();
+            deleteDirectoryIfExists(root);
+        }
+    }
+
+    @Test
+    public void testNamesCatalog() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        deleteDirectoryIfExists(root);
+
+        FSLuceneIndices indices = new FSLuceneIndices(root);
+        try {
+            for (String name : new String[] { "b2", "a1", "b1", "c1", "b3" }) {
+                Files.createDirectories(root.resolve(name));
+            }
+
+            assertEquals(Arrays.asList("b1", "b2", "b3"), new ArrayList<>(indices.names("b", true)));
+            assertEquals(Arrays.asList("b2", "b3", "c1"), new ArrayList<>(indices.namesBetween("b2", "c1", true)));
+            assertEquals(Arrays.asList("a1", "b1"), new ArrayList<>(indices.namesBetween(null, "b1", true)));
+            assertTrue(indices.exists("b3", true));
+
+            indices.setWatching(true);
+            Files.createDirectories(root.resolve("b4"));
+            deleteDirectoryIfExists(root.resolve("a1"));
+            indices.invalidate();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((!indices.names(true).contains("b4") || indices.names(true).contains("a1")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(Arrays.asList("b1", "b2", "b3", "b4", "c1"), new ArrayList<>(indices.names(true)));
+        } finally {
+            indices.close();
+            deleteDirectoryIfExists(root);
+        }
+    }
+
+    @Test
+    public void testMetadata() throws IOException {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        deleteDirectoryIfExists(root);
+
+        LuceneIndices indices = new FSLuceneIndices(root);
+        indices.setMetadataEnabled(true);
+        indices.setTimestampField("time");
+        try {
+            try (Reference<LuceneIndex> index = indices.provide("test1")) {
+                for (long time : new long[] { 3000L, 1000L, 2000L }) {
+                    Document doc = new Document();
+                    LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.INDEX);
+                    index.use().addDocument(doc);
+                }
+            }
+            try (Reference<LuceneIndex> index = indices.provide("test2")) {
+                index.use().commit();
+            }
+            indices.close();
+
+            indices = new FSLuceneIndices(root);
+            LuceneIndexMetadata metadata = indices.metadata("test1");
+            assertEquals(3, metadata.getDocCount());
+            assertEquals(1000L, (long) metadata.getMinTimestamp());
+            assertEquals(3000L, (long) metadata.getMaxTimestamp());
+            assertTrue(metadata.mayContainTimestamps(2500L, null));
+            assertFalse(metadata.mayContainTimestamps(3001L, 5000L));
+
+            assertTrue(indices.metadata("test2").isEmpty());
+            assertTrue(indices.isEmpty("test2"));
+            assertFalse(indices.isEmpty("test"));
+            assertFalse(indices.isOpen("test1"));
+            assertFalse(indices.isOpen("test2"));
+        } finally {
+            indices.close();
+            deleteDirectoryIfExists(root);
+        }
+    }
+
+    @Test
+    public void testFindById() throws IOException {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        deleteDirectoryIfExists(root);
+
+        LuceneIndices indices = new FSLuceneIndices(root);
+        indices.setMetadataEnabled(true);
+        indices.setIdField("id");
+        try {
+            for (int day = 1; day <= 3; day++) {
+                try (Reference<LuceneIndex> index = indices.provide("events-" + day)) {
+                    for (int i = 0; i < 100; i++) {
+                        Document doc = new Document();
+                        LuceneFields.Keyword.add(doc, "id", "event-" + day + "-" + i, LuceneFields.FieldOptions.STORE_INDEX);
+                        index.use().addDocument(doc);
+                    }
+                    index.use().commit();
+                    Document doc = new Document();
+                    LuceneFields.Keyword.add(doc, "id", "late-" + day, LuceneFields.FieldOptions.STORE_INDEX);
+                    index.use().addDocument(doc);
+                }
+            }
+            indices.close();
+            assertTrue(Files.exists(root.resolve("events-1").resolve(IdFilters.FILE_NAME)));
+
+            indices = new FSLuceneIndices(root);
+            indices.setMetadataEnabled(true);
+            indices.setIdField("id");
+            assertTrue(indices.mayContainId("events-2", "event-2-50"));
+            assertTrue(indices.mayContainId("events-2", "late-2"));
+            int falsePositives = 0;
+            for (int i = 0; i < 100; i++) {
+                if (indices.mayContainId("events-1", "event-2-" + i)) {
+                    falsePositives++;
+                }
+            }
+            assertTrue(falsePositives < 10);
+
+            assertEquals(null, indices.findById("unknown"));
+            assertEquals("events-1", indices.findById("event-1-50"));
+            assertTrue(indices.isOpen("events-1"));
+            assertFalse(indices.isOpen("events-2"));
+            assertFalse(indices.isOpen("events-3"));
+            assertEquals("events-3", indices.findById("late-3"));
+
+            //lookups do not open writers, so filters of opened indices keep being used
+            assertFalse(indices.mayContainId("events-1", "unknown"));
+            indices.setIdFiltersCacheBytes(0);
+            assertFalse(indices.mayContainId("events-2", "unknown"));
+            assertEquals("events-2", indices.findById("event-2-7"));
+        } finally {
+            indices.close();
+            deleteDirectoryIfExists(root);
+        }
+    }
+
+    @Test
+    public void testZoneMapPruning() throws IOException {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        deleteDirectoryIfExists(root);
+
+        LuceneIndices indices = new FSLuceneIndices(root);
+        indices.setMetadataEnabled(true);
+        indices.setZoneMapFields(Arrays.asList("status", "duration"));
+        try {
+            for (long status : new long[] { 200L, 404L, 503L }) {
+                try (Reference<LuceneIndex> index = indices.provide("status" + status)) {
+                    Document doc = new Document();
+                    LuceneFields.Long.add(doc, "status", status, LuceneFields.FieldOptions.STORE_INDEX);
+                    LuceneFields.Double.add(doc, "duration", status / 100.0, LuceneFields.FieldOptions.INDEX);
+                    index.use().addDocument(doc);
+                }
+            }
+            indices.close();
+
+            indices = new FSLuceneIndices(root);
+            Query query = new BooleanQuery.Builder()
+                    .add(LuceneSearch.MATCH_ALL_QUERY, BooleanClause.Occur.MUST)
+                    .add(LongPoint.newRangeQuery("status", 500L, Long.MAX_VALUE), BooleanClause.Occur.FILTER)
+                    .build();
+            assertFalse(indices.mayMatch("status200", query));
+            assertFalse(indices.mayMatch("status404", query));
+            assertTrue(indices.mayMatch("status503", query));
+            assertFalse(indices.mayMatch("status503", DoublePoint.newRangeQuery("duration", 6.0, 10.0)));
+            assertTrue(indices.mayMatch("status503", LongPoint.newExactQuery("unknown", 1L)));
+
+            List<LuceneSearchHit> hits = indices.search(LuceneSearch.builder().query(query).build()).toList();
+            assertEquals(1, hits.size());
+            assertEquals("status503", hits.get(0).getIndexName());
+            assertFalse(indices.isOpen("status200"));
+            assertFalse(indices.isOpen("status404"));
+        } finally {
+            indices.close();
+            deleteDirectoryIfExists(root);
+        }
+    }
 }
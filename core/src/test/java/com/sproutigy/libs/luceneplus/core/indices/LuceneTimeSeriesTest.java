@@ -1,13 +1,54 @@
 package com.sproutigy.libs.luceneplus.core.indices;
 
+import com.sproutigy.libs.luceneplus.core.IndexWriterConfigSupplier;
+import com.sproutigy.libs.luceneplus.core.LiveCommitData;
 import com.sproutigy.libs.luceneplus.core.LuceneIndex;
 import com.sproutigy.libs.luceneplus.core.Reference;
+import com.sproutigy.libs.luceneplus.core.LuceneFields;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearch;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchHit;
+import com.sproutigy.libs.luceneplus.core.search.LuceneSearchResults;
 import lombok.SneakyThrows;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class LuceneTimeSeriesTest {
@@ -36,6 +77,370 @@ public class LuceneTimeSeriesTest {
         assertEquals(indexName, indicesNames[0]);
     }
 
+    @Test
+    public void testRangeLookup() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.SECOND);
+        long t1 = 1501027200000L; //26.07.2017 00:00:00
+        for (long time : new long[] { t1 - 1000L, t1, t1 + 5000L, t1 + 30 * 24 * 60 * 60 * 1000L }) {
+            indices.acquire(luceneTimeSeries.indexName(time));
+        }
+        indices.acquire("other-20170726000000");
+        indices.acquire(TEST_PREFIX + "2017072600"); //coarser index, e.g. compacted
+        indices.acquire(TEST_PREFIX + "201707260"); //not a valid name of any resolution
+
+        long t2 = t1 + 30 * 24 * 60 * 60 * 1000L - 1L;
+        assertArrayEquals(new String[] { TEST_PREFIX + "2017072600", TEST_PREFIX + "20170726000000", TEST_PREFIX + "20170726000005" }, luceneTimeSeries.indicesNames(t1 + 999L, t2));
+        assertArrayEquals(new String[] { TEST_PREFIX + "20170726000005", TEST_PREFIX + "20170726000000", TEST_PREFIX + "2017072600" }, luceneTimeSeries.indicesNames(t2, t1));
+        assertEquals(5, luceneTimeSeries.indicesNames(null, t2 + 1L).length);
+        assertEquals(4, luceneTimeSeries.indicesNames(t1, null).length);
+        assertEquals(6, luceneTimeSeries.indicesNames().length);
+    }
+
+    @Test
+    public void testRoutedWrites() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        indices.setAutoClosePolicy(AutoClosePolicy.builder().delay(1, TimeUnit.HOURS).build());
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.HOUR);
+        luceneTimeSeries.setMaxPinnedIndices(2);
+
+        long hour = LuceneTimeSeries.Resolution.HOUR.getDurationMilliseconds();
+        List<LuceneTimeSeries.TimestampedDocument> docs = new ArrayList<>();
+        for (long time : new long[] { TEST_TIMESTAMP, TEST_TIMESTAMP + 1, TEST_TIMESTAMP + hour, TEST_TIMESTAMP + 2 }) {
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.STORE_INDEX);
+            docs.add(new LuceneTimeSeries.TimestampedDocument(time, doc));
+        }
+        luceneTimeSeries.addDocuments(docs);
+
+        Document late = new Document();
+        LuceneFields.Long.add(late, "time", TEST_TIMESTAMP - hour, LuceneFields.FieldOptions.STORE_INDEX);
+        luceneTimeSeries.addDocument(TEST_TIMESTAMP - hour, late);
+
+        String[] names = luceneTimeSeries.indicesNames();
+        assertEquals(3, names.length);
+        assertEquals(1, indices.search(LuceneSearch.MATCH_ALL, names[0]).count());
+        assertEquals(3, indices.search(LuceneSearch.MATCH_ALL, names[1]).count());
+        assertEquals(1, indices.search(LuceneSearch.MATCH_ALL, names[2]).count());
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.DAY);
+        long day = LuceneTimeSeries.Resolution.DAY.getDurationMilliseconds();
+        long now = System.currentTimeMillis();
+        for (long time : new long[] { now - 10 * day, now - 5 * day, now - day, now }) {
+            indices.acquire(luceneTimeSeries.indexName(time));
+        }
+
+        luceneTimeSeries.setRetentionPolicy(RetentionPolicy.builder().maxAge(3, TimeUnit.DAYS).checkInterval(1, TimeUnit.HOURS).build());
+        assertEquals(Arrays.asList(luceneTimeSeries.indexName(now - 10 * day), luceneTimeSeries.indexName(now - 5 * day)), luceneTimeSeries.applyRetention());
+        assertEquals(2, luceneTimeSeries.indicesNames().length);
+
+        luceneTimeSeries.setRetentionPolicy(RetentionPolicy.builder().maxIndices(0).build());
+        assertEquals(Collections.singletonList(luceneTimeSeries.indexName(now - day)), luceneTimeSeries.applyRetention());
+        assertArrayEquals(new String[] { luceneTimeSeries.indexName(now) }, luceneTimeSeries.indicesNames());
+
+        luceneTimeSeries.close();
+    }
+
+    @Test
+    public void testUnpinnedWrites() throws IOException {
+        MemoryLuceneIndices indices = new MemoryLuceneIndices();
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.HOUR);
+        luceneTimeSeries.setMaxPinnedIndices(0);
+        String name = luceneTimeSeries.indexName(TEST_TIMESTAMP);
+        LuceneIndex held = indices.acquire(name);
+        for (int i = 0; i < 3; i++) {
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "time", TEST_TIMESTAMP, LuceneFields.FieldOptions.STORE_INDEX);
+            luceneTimeSeries.addDocument(TEST_TIMESTAMP, doc);
+        }
+        //every write released its own acquisition only
+        synchronized (indices.acquisitionsCounters) {
+            assertEquals(Integer.valueOf(1), indices.acquisitionsCounters.get(name));
+        }
+        assertEquals(3, held.search(LuceneSearch.MATCH_ALL).count());
+        indices.release(held);
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.HOUR);
+        long hour = LuceneTimeSeries.Resolution.HOUR.getDurationMilliseconds();
+        long day = LuceneTimeSeries.Resolution.DAY.getDurationMilliseconds();
+        long t1 = 1501027200000L; //26.07.2017 00:00:00
+        for (long time : new long[] { t1, t1 + 1, t1 + hour, t1 + 23 * hour, t1 + day }) {
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.STORE_INDEX);
+            luceneTimeSeries.addDocument(time, doc);
+        }
+        assertEquals(4, luceneTimeSeries.indicesNames().length);
+
+        //in-flight search keeps its source index until released
+        LuceneIndex searched = indices.acquire(luceneTimeSeries.indexName(t1));
+
+        assertEquals(Collections.singletonList(TEST_PREFIX + "20170726"), luceneTimeSeries.compact(LuceneTimeSeries.Resolution.DAY, t1 + day + hour, true));
+        assertArrayEquals(new String[] { TEST_PREFIX + "20170726", TEST_PREFIX + "2017072700" }, luceneTimeSeries.indicesNames());
+        assertArrayEquals(new String[] { TEST_PREFIX + "20170726" }, luceneTimeSeries.indicesNames(t1 + hour, t1 + hour + 1));
+        assertEquals(4, indices.search(LuceneSearch.MATCH_ALL, TEST_PREFIX + "20170726").count());
+        assertTrue(indices.exists(TEST_PREFIX + "2017072600"));
+        assertFalse(indices.exists(TEST_PREFIX + "2017072601"));
+        assertEquals(2, searched.search(LuceneSearch.MATCH_ALL).count());
+
+        indices.release(searched);
+        assertFalse(indices.exists(TEST_PREFIX + "2017072600"));
+
+        //late write to compacted source goes to compacted index
+        Document late = new Document();
+        LuceneFields.Long.add(late, "time", t1 + hour + 1, LuceneFields.FieldOptions.STORE_INDEX);
+        luceneTimeSeries.addDocument(t1 + hour + 1, late);
+        assertEquals(5, indices.search(LuceneSearch.MATCH_ALL, TEST_PREFIX + "20170726").count());
+
+        //other late write goes to a new fine index, which is merged by the next run
+        late = new Document();
+        LuceneFields.Long.add(late, "time", t1 + 2 * hour, LuceneFields.FieldOptions.STORE_INDEX);
+        luceneTimeSeries.addDocument(t1 + 2 * hour, late);
+        assertEquals(2, luceneTimeSeries.indicesNames(t1, t1 + day - 1).length);
+
+        //other commit data of compacted index is kept
+        LuceneIndex compacted = indices.acquire(TEST_PREFIX + "20170726");
+        try (Reference<IndexWriter> writer = compacted.provideWriter()) {
+            LiveCommitData.put(writer.use(), Collections.singletonMap(LuceneTimeSeries.TIER_KEY, LuceneTimeSeries.Tier.HOT.name()));
+            writer.use().commit();
+        }
+        indices.release(compacted);
+        assertEquals(Collections.singletonList(TEST_PREFIX + "20170726"), luceneTimeSeries.compact(LuceneTimeSeries.Resolution.DAY, t1 + day + hour, true));
+        assertArrayEquals(new String[] { TEST_PREFIX + "20170726" }, luceneTimeSeries.indicesNames(t1, t1 + day - 1));
+        assertEquals(6, indices.search(LuceneSearch.MATCH_ALL, TEST_PREFIX + "20170726").count());
+        Map<String, String> commitData = indices.metadata(TEST_PREFIX + "20170726").getCommitData();
+        assertEquals(LuceneTimeSeries.Tier.HOT.name(), commitData.get(LuceneTimeSeries.TIER_KEY));
+        assertTrue(commitData.get(LuceneTimeSeries.COMPACTED_SOURCES_KEY).contains(TEST_PREFIX + "2017072602"));
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    @Test
+    public void testPlannedSearch() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        indices.setTimestampField("time");
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.HOUR);
+        long hour = LuceneTimeSeries.Resolution.HOUR.getDurationMilliseconds();
+        long t1 = 1501027200000L; //26.07.2017 00:00:00
+        for (int i = 0; i < 12; i++) {
+            long time = t1 + i * hour / 4;
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.STORE_INDEX_DOCVALUE);
+            LuceneFields.Keyword.add(doc, "parity", i % 2 == 0 ? "even" : "odd", LuceneFields.FieldOptions.INDEX);
+            luceneTimeSeries.addDocument(time, doc);
+        }
+
+        //boundary indices are filtered by time, middle index is searched with query alone
+        assertEquals(6, luceneTimeSeries.search(LuceneSearch.MATCH_ALL, t1 + hour / 2, t1 + 2 * hour - 1).count());
+        assertEquals(3, luceneTimeSeries.search(LuceneSearch.builder().query(new TermQuery(new Term("parity", "even"))).build(), t1 + hour / 2, t1 + 2 * hour - 1).count());
+
+        //time range filter clause is taken as time bounds
+        Query query = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("parity", "odd")), BooleanClause.Occur.MUST)
+                .add(LongPoint.newRangeQuery("time", t1 + hour, Long.MAX_VALUE), BooleanClause.Occur.FILTER)
+                .build();
+        assertEquals(4, luceneTimeSeries.search(LuceneSearch.builder().query(query).build()).count());
+        assertEquals(2, luceneTimeSeries.search(LuceneSearch.builder().query(query).build(), null, t1 + 2 * hour - 1).count());
+        assertEquals(0, luceneTimeSeries.search(LuceneSearch.builder().query(LongPoint.newRangeQuery("time", t1, t1 + hour)).build(), t1 + 2 * hour, null).count());
+        //whole query being time range is taken as time bounds
+        assertEquals(6, luceneTimeSeries.search(LuceneSearch.builder().query(LongPoint.newRangeQuery("time", t1 + hour / 2, t1 + 2 * hour - 1)).build()).count());
+
+        //indices are visited in time order of sort and search stops after requested number of hits
+        Sort sort = new Sort(new SortField("time", SortField.Type.LONG, true));
+        LuceneSearchResults results = luceneTimeSeries.search(LuceneSearch.builder().numHits(5).sort(sort).build(), t1, null);
+        List<Long> times = new ArrayList<>();
+        while (results.hasNext()) {
+            LuceneSearchHit hit = results.next();
+            times.add(LuceneFields.Long.get(hit.getDocument(), "time"));
+        }
+        List<Long> expected = new ArrayList<>();
+        for (int i = 11; i > 6; i--) {
+            expected.add(t1 + i * hour / 4);
+        }
+        assertEquals(expected, times);
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    @Test
+    public void testMergePolicy() throws Exception {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        indices.setIndexWriterConfigSupplier(new IndexWriterConfigSupplier() {
+            @Override
+            public IndexWriterConfig get(Analyzer analyzer) {
+                return new IndexWriterConfig(analyzer).setMergeScheduler(new SerialMergeScheduler());
+            }
+        });
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.HOUR);
+        TimeSeriesMergePolicy mergePolicy = new TimeSeriesMergePolicy();
+        mergePolicy.setMergeFactor(2);
+        luceneTimeSeries.setMergePolicy(mergePolicy);
+        long hour = LuceneTimeSeries.Resolution.HOUR.getDurationMilliseconds();
+
+        //adjacent segments are merged
+        assertTrue(flushSegments(indices, luceneTimeSeries.indexName(TEST_TIMESTAMP), 4, null) < 4);
+
+        //finalized index is not merged until forced
+        LuceneIndex index = indices.acquire(luceneTimeSeries.indexName(TEST_TIMESTAMP + hour));
+        try (Reference<IndexWriter> writer = index.provideWriter()) {
+            writer.use().setLiveCommitData(Collections.singletonMap(LuceneTimeSeries.TIER_KEY, LuceneTimeSeries.Tier.WARM.name()).entrySet());
+            writer.use().commit();
+        }
+        indices.release(index);
+        assertEquals(4, flushSegments(indices, luceneTimeSeries.indexName(TEST_TIMESTAMP + hour), 4, null));
+        index = indices.acquire(luceneTimeSeries.indexName(TEST_TIMESTAMP + hour));
+        index.optimize();
+        indices.release(index);
+        assertEquals(1, flushSegments(indices, luceneTimeSeries.indexName(TEST_TIMESTAMP + hour), 0, null));
+
+        //old segments are not merged
+        mergePolicy.setMaxSegmentAge(0, TimeUnit.MILLISECONDS);
+        assertEquals(2, flushSegments(indices, luceneTimeSeries.indexName(TEST_TIMESTAMP + 2 * hour), 2, 10L));
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    private static int flushSegments(LuceneIndices indices, String name, int count, Long pauseMillis) throws Exception {
+        LuceneIndex index = indices.acquire(name);
+        try (Reference<IndexWriter> writer = index.provideWriter()) {
+            for (int i = 0; i < count; i++) {
+                Document doc = new Document();
+                LuceneFields.Long.add(doc, "time", TEST_TIMESTAMP, LuceneFields.FieldOptions.STORE_INDEX);
+                writer.use().addDocument(doc);
+                writer.use().flush();
+                if (pauseMillis != null) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(writer.use())) {
+                return reader.leaves().size();
+            }
+        } finally {
+            indices.release(index);
+        }
+    }
+
+    @Test
+    public void testRollover() throws IOException {
+        LuceneIndices indices = new MemoryLuceneIndices();
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX);
+        luceneTimeSeries.setRolloverPolicy(RolloverPolicy.builder().maxDocs(2).minDuration(0, TimeUnit.MILLISECONDS).build());
+        long t1 = 1501027200000L; //26.07.2017 00:00:00
+        for (long time : new long[] { t1, t1 + 1, t1 + 2, t1 + 1000, t1 + 500, t1 - 5000 }) {
+            Document doc = new Document();
+            LuceneFields.Long.add(doc, "time", time, LuceneFields.FieldOptions.STORE_INDEX);
+            luceneTimeSeries.addDocument(time, doc);
+        }
+
+        String n0 = TEST_PREFIX + "20170725235955";
+        String n1 = TEST_PREFIX + "20170726000000";
+        String n2 = TEST_PREFIX + "20170726000001";
+        assertArrayEquals(new String[] { n0, n1, n2 }, luceneTimeSeries.indicesNames());
+        assertEquals(1, indices.search(LuceneSearch.MATCH_ALL, n0).count());
+        assertEquals(4, indices.search(LuceneSearch.MATCH_ALL, n1).count());
+        assertEquals(1, indices.search(LuceneSearch.MATCH_ALL, n2).count());
+
+        assertArrayEquals(new String[] { n1 }, luceneTimeSeries.indicesNames(t1 + 999, t1 + 999));
+        assertArrayEquals(new String[] { n0, n1 }, luceneTimeSeries.indicesNames(t1 - 1, t1 + 999));
+        assertArrayEquals(new String[] { n2 }, luceneTimeSeries.indicesNames(t1 + 1000, null));
+        assertEquals(t1 + 999, luceneTimeSeries.rangeOf(n1).getEndAsTimestamp());
+        assertEquals(Long.MAX_VALUE, luceneTimeSeries.rangeOf(n2).getEndAsTimestamp());
+        assertEquals(n1, luceneTimeSeries.indexName(t1 + 999));
+
+        luceneTimeSeries.close();
+        indices.close();
+    }
+
+    @Test
+    public void testTiering() throws Exception {
+        Path root = Files.createTempDirectory("LucenePlus-test");
+        FSLuceneIndices indices = new FSLuceneIndices(root);
+        try {
+            LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(indices, TEST_PREFIX, LuceneTimeSeries.Resolution.DAY);
+            long day = LuceneTimeSeries.Resolution.DAY.getDurationMilliseconds();
+            long now = System.currentTimeMillis();
+            for (long time : new long[] { now - 10 * day, now - 2 * day, now }) {
+                for (int i = 0; i < 3; i++) {
+                    Document doc = new Document();
+                    LuceneFields.Text.add(doc, "text", "Hello World " + i, LuceneFields.FieldOptions.STORE_INDEX);
+                    luceneTimeSeries.addDocument(time, doc);
+                    indices.commit();
+                }
+            }
+            luceneTimeSeries.setMaxPinnedIndices(0);
+
+            luceneTimeSeries.setTieringPolicy(TieringPolicy.builder().warmAfter(1, TimeUnit.DAYS).coldAfter(5, TimeUnit.DAYS).maxMergeMBPerSec(null).build());
+            String cold = luceneTimeSeries.indexName(now - 10 * day);
+            String warm = luceneTimeSeries.indexName(now - 2 * day);
+            String hot = luceneTimeSeries.indexName(now);
+            assertEquals(LuceneTimeSeries.Tier.COLD, luceneTimeSeries.tierOf(cold));
+            assertEquals(LuceneTimeSeries.Tier.WARM, luceneTimeSeries.tierOf(warm));
+            assertEquals(LuceneTimeSeries.Tier.HOT, luceneTimeSeries.tierOf(hot));
+            assertEquals(3, indices.metadata(warm).getSegmentCount());
+
+            assertEquals(Arrays.asList(cold, warm), luceneTimeSeries.applyTiering());
+            indices.executeOptimization(new Runnable() {
+                @Override
+                public void run() { }
+            }).get(); //transitions are executed in order
+
+            assertEquals(LuceneTimeSeries.Tier.COLD.name(), indices.metadata(cold).getCommitData().get(LuceneTimeSeries.TIER_KEY));
+            assertEquals(LuceneTimeSeries.Tier.WARM.name(), indices.metadata(warm).getCommitData().get(LuceneTimeSeries.TIER_KEY));
+            assertEquals(1, indices.metadata(warm).getSegmentCount());
+            assertEquals(3, indices.metadata(hot).getSegmentCount());
+            try (Directory directory = FSDirectory.open(indices.resolvePath(cold))) {
+                SegmentInfos segmentInfos = SegmentInfos.readLatestCommit(directory);
+                assertEquals(1, segmentInfos.size());
+                assertEquals(Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION.name(), segmentInfos.info(0).info.getAttribute(Lucene50StoredFieldsFormat.MODE_KEY));
+            }
+            assertEquals(Collections.<String>emptyList(), luceneTimeSeries.applyTiering());
+
+            LuceneIndex warmIndex = indices.acquire(warm);
+            assertTrue(warmIndex.isReadOnly());
+            assertEquals(3, warmIndex.search(LuceneSearch.MATCH_ALL).count());
+            IndexSearcher searcher = warmIndex.acquireSearcher();
+
+            //late write makes index writable until it is transitioned again, also while it is searched
+            Document late = new Document();
+            LuceneFields.Text.add(late, "text", "Late", LuceneFields.FieldOptions.STORE_INDEX);
+            luceneTimeSeries.addDocument(now - 2 * day, late);
+            assertFalse(warmIndex.isReadOnly());
+            assertEquals(3, searcher.getIndexReader().numDocs());
+            warmIndex.release(searcher);
+            assertEquals(4, warmIndex.search(LuceneSearch.MATCH_ALL).count());
+            indices.release(warmIndex);
+            luceneTimeSeries.setMaxPinnedIndices(0);
+            assertTrue(luceneTimeSeries.transition(warm, LuceneTimeSeries.Tier.WARM));
+            warmIndex = indices.acquire(warm);
+            assertTrue(warmIndex.isReadOnly());
+            assertEquals(4, warmIndex.search(LuceneSearch.MATCH_ALL).count());
+            assertEquals(1, warmIndex.getMetadata().getSegmentCount());
+            indices.optimize(); //read-only tier indices are skipped
+            indices.release(warmIndex);
+
+            luceneTimeSeries.close();
+        } finally {
+            indices.close();
+            FSLuceneIndices.deleteDirectoryIfExists(root);
+        }
+    }
+
     @Test
     public void testResolutionDay() {
         assertEquals(TEST_INDEX_NAME.substring(0, TEST_PREFIX.length() + 8), indexNameForResolution(LuceneTimeSeries.Resolution.DAY));
@@ -56,6 +461,40 @@ public class LuceneTimeSeriesTest {
         assertEquals(TEST_INDEX_NAME.substring(0, TEST_PREFIX.length() + 14), indexNameForResolution(LuceneTimeSeries.Resolution.SECOND));
     }
 
+    @Test
+    public void testNamingMatchesCalendar() throws IOException, ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(new MemoryLuceneIndices(), TEST_PREFIX, LuceneTimeSeries.Resolution.SECOND);
+
+        Random random = new Random(42);
+        long[] timestamps = new long[1000];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = (long) (random.nextDouble() * 2 * 4102444800000L) - 4102444800000L; //years 1840-2100
+        }
+        timestamps[0] = 951782400000L; //29.02.2000
+        timestamps[1] = -1L;
+        timestamps[2] = 0L;
+
+        for (long timestamp : timestamps) {
+            String expected = TEST_PREFIX + format.format(new Date(timestamp));
+            assertEquals(expected, luceneTimeSeries.indexName(timestamp));
+            LuceneTimeSeries.TimeRange range = luceneTimeSeries.rangeOf(expected);
+            assertEquals(format.parse(expected.substring(TEST_PREFIX.length())).getTime(), range.getStartAsTimestamp());
+            assertEquals(range.getStartAsTimestamp() + 999L, range.getEndAsTimestamp());
+        }
+    }
+
+    @Test
+    public void testRangeOfInvalidNames() throws IOException {
+        LuceneTimeSeries luceneTimeSeries = new LuceneTimeSeries(new MemoryLuceneIndices(), TEST_PREFIX, LuceneTimeSeries.Resolution.DAY);
+        assertNull(luceneTimeSeries.rangeOf(TEST_PREFIX + "2017022"));
+        assertNull(luceneTimeSeries.rangeOf(TEST_PREFIX + "20170229"));
+        assertNull(luceneTimeSeries.rangeOf(TEST_PREFIX + "2017x228"));
+        assertNull(luceneTimeSeries.rangeOf("other-20170228"));
+        assertEquals(1488240000000L, luceneTimeSeries.rangeOf(TEST_PREFIX + "20170228").getStartAsTimestamp());
+    }
+
     @SneakyThrows
     private String indexNameForResolution(LuceneTimeSeries.Resolution resolution) {
         LuceneIndices indices = new MemoryLuceneIndices();